@@ -0,0 +1,67 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/* Random games for the benchmarks to work on, generated straight from 
+   HexapawnRules so no brain or engine is touched while they are set up.
+   Every game starts from the default board with white moving first. */
+class HexapawnBenchmarkGames {
+
+	// Board before each move of each game, then the board after the last move.
+	final long[][] boards;
+	// Winner of each game, EMPTY_SQUARE for a draw.
+	final int[] winners;
+
+	HexapawnBenchmarkGames(HexapawnRules rules, int games, long seed) {
+		SplittableRandom rand = new SplittableRandom(seed);
+		int[] moves = new int[rules.getMaxMoves()];
+		boards = new long[games][];
+		winners = new int[games];
+
+		for (int game = 0 ; game < games ; game++) {
+			ArrayList<Long> played = new ArrayList<Long>();
+			long board = rules.getDefaultBoard();
+			int toMove = HexapawnConstants.WHITE_SQUARE;
+			played.add(board);
+
+			int result;
+			while ((result = rules.outcome(board, toMove)) == HexapawnRules.ONGOING) {
+				int count = rules.generateMoves(board, toMove, moves);
+				board = HexapawnRules.move(board, moves[rand.nextInt(count)]);
+				toMove = opponent(toMove);
+				played.add(board);
+			}
+
+			boards[game] = new long[played.size()];
+			for (int i = 0 ; i < played.size() ; i++) boards[game][i] = played.get(i);
+			winners[game] = result;
+		}
+	}
+
+	// Color of the side playing move 'move' of a game (white moves first).
+	static int mover(int move) {
+		return (move % 2 == 0) ? HexapawnConstants.WHITE_SQUARE : HexapawnConstants.BLACK_SQUARE;
+	}
+
+	/* Every board in the games before a move by 'color', repeated as needed 
+	   to fill a power of two sized array so benchmarks can cycle through it 
+	   with a mask. */
+	long[] positions(int color, int size) {
+		ArrayList<Long> found = new ArrayList<Long>();
+		for (long[] game : boards) {
+			for (int move = 0 ; move < game.length - 1 ; move++) {
+				if (mover(move) == color) found.add(game[move]);
+			}
+		}
+
+		long[] positions = new long[size];
+		for (int i = 0 ; i < size ; i++) positions[i] = found.get(i % found.size());
+		return positions;
+	}
+
+	private static int opponent(int color) {
+		return (color == HexapawnConstants.WHITE_SQUARE) ?
+			HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import training.HexapawnSelfPlay;
+
+/* Move selection and learning in HexapawnBrain, for brains that have already
+   learned from 'games' games of self-play against a random opponent. 
+
+   addState can not be called from outside the brain, so it is measured as
+   one move added to the learning buffer and learned from, which is exactly
+   one addState call.
+
+   Learning changes the brain, so every iteration starts from a fresh copy
+   of the trained brain.  Within an iteration it grows by at most the moves
+   of the POSITIONS positions or games cycled through. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexapawnBrainBenchmark {
+
+	// Number of positions and games cycled through, must be a power of two.
+	private static final int POSITIONS = 1024;
+
+	@Param({"0", "1000", "100000"})
+	public int games;
+
+	// Brain as trained, and the copy of it the current iteration uses.
+	private HexapawnBrain trained, brain;
+	private HexapawnBenchmarkGames played;
+	// Boards the CPU (black) is to move on, and a valid move from each.
+	private long[] boards, outputs;
+	private int next;
+
+	@Setup
+	public void setup() {
+		HexapawnRules rules = HexapawnRules.STANDARD;
+		trained = new HexapawnBrain(rules, 1);
+		new HexapawnSelfPlay(new HexapawnEngine(trained), 
+			new HexapawnRandomStrategy(rules, 2)).play(games);
+
+		played = new HexapawnBenchmarkGames(rules, POSITIONS, 3);
+		boards = played.positions(HexapawnConstants.BLACK_SQUARE, POSITIONS);
+		outputs = new long[POSITIONS];
+		int[] moves = new int[rules.getMaxMoves()];
+		for (int i = 0 ; i < POSITIONS ; i++) {
+			int count = rules.generateMoves(boards[i], HexapawnConstants.BLACK_SQUARE, moves);
+			outputs[i] = HexapawnRules.move(boards[i], moves[i % count]);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void copyBrain() {
+		brain = trained.copy(1);
+		next = 0;
+	}
+
+	@Benchmark
+	public long getMove() {
+		return brain.getMove(boards[next++ & (POSITIONS - 1)]);
+	}
+
+	@Benchmark
+	public void addState() {
+		int i = next++ & (POSITIONS - 1);
+		brain.addToLearningBuffer(boards[i], outputs[i], HexapawnConstants.BLACK_SQUARE);
+		brain.learnFromBuffer(HexapawnConstants.BLACK_SQUARE);
+	}
+
+	// Learn from one whole game, both sides' moves buffered as the engine does.
+	@Benchmark
+	public void learnFromBuffer() {
+		int game = next++ & (POSITIONS - 1);
+		long[] boards = played.boards[game];
+
+		for (int move = 0 ; move < boards.length - 1 ; move++) {
+			brain.addToLearningBuffer(boards[move], boards[move + 1], 
+				HexapawnBenchmarkGames.mover(move));
+		}
+		if (played.winners[game] == HexapawnConstants.EMPTY_SQUARE) {
+			brain.learnFromBuffer();
+		} else {
+			brain.learnFromBuffer(played.winners[game]);
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+package engine;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/* Rule checks made by HexapawnEngine on every move of a game.  Each call 
+   works on the next of a fixed set of positions taken from random games, so
+   the results are not for one lucky board. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexapawnEngineBenchmark {
+
+	// Number of positions cycled through, must be a power of two.
+	private static final int POSITIONS = 1024;
+
+	private HexapawnEngine engine;
+	private long[] boards;
+	private int[] froms, tos;
+	// Engines part way through a game, some finished and some not.
+	private HexapawnEngine[] engines;
+	private int next;
+
+	@Setup
+	public void setup() {
+		HexapawnRules rules = HexapawnRules.STANDARD;
+		HexapawnBenchmarkGames games = new HexapawnBenchmarkGames(rules, 256, 1);
+		SplittableRandom rand = new SplittableRandom(2);
+
+		/* Mix valid and invalid moves, as the GUI checks whatever square the
+		   player clicks on. */
+		engine = new HexapawnEngine(rules);
+		boards = games.positions(HexapawnConstants.WHITE_SQUARE, POSITIONS);
+		froms = new int[POSITIONS];
+		tos = new int[POSITIONS];
+		int[] moves = new int[rules.getMaxMoves()];
+		for (int i = 0 ; i < POSITIONS ; i++) {
+			if (rand.nextBoolean()) {
+				int count = rules.generateMoves(boards[i], HexapawnConstants.WHITE_SQUARE, moves);
+				int move = moves[rand.nextInt(count)];
+				froms[i] = HexapawnRules.moveFrom(move);
+				tos[i] = HexapawnRules.moveTo(move);
+			} else {
+				froms[i] = rand.nextInt(rules.getSquareCount());
+				tos[i] = rand.nextInt(rules.getSquareCount());
+			}
+		}
+
+		// Play random white moves against each engine, stopping part way.
+		engines = new HexapawnEngine[POSITIONS];
+		for (int i = 0 ; i < POSITIONS ; i++) {
+			HexapawnEngine e = new HexapawnEngine(new HexapawnBrain(rules, i));
+			int plies = rand.nextInt(2 * rules.getSquareCount());
+
+			for (int ply = 0 ; ply < plies && !e.gameCompleted() ; ply++) {
+				if (ply % 2 == 1) {
+					e.makeMove();
+					continue;
+				}
+				int count = e.generateMoves(HexapawnConstants.WHITE_SQUARE, moves);
+				int move = moves[rand.nextInt(count)];
+				e.move(HexapawnRules.moveFrom(move), HexapawnRules.moveTo(move));
+			}
+			engines[i] = e;
+		}
+	}
+
+	@Benchmark
+	public boolean isValidMove() {
+		int i = next++ & (POSITIONS - 1);
+		return engine.isValidMove(boards[i], froms[i], tos[i]);
+	}
+
+	@Benchmark
+	public boolean gameCompleted() {
+		return engines[next++ & (POSITIONS - 1)].gameCompleted();
+	}
+}
\ No newline at end of file
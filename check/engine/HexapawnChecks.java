@@ -0,0 +1,324 @@
+package engine;
+
+import server.HexapawnSession;
+import server.HexapawnSessionManager;
+import training.HexapawnSelfPlay;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/* Checks of behaviour the engine promises but that is easy to break without
+   noticing, run with 'make check'.  Each check throws on failure, and the
+   program exits with a non-zero status if any of them did. */
+public class HexapawnChecks {
+
+	private static int failures;
+
+	public static void main(String[] args) {
+		run("aging keeps target size, 3x3 LRU", () -> checkAgingTarget(
+			HexapawnRules.STANDARD, 30, HexapawnAging.Eviction.LEAST_RECENTLY_USED));
+		run("aging keeps target size, 3x3 LFU", () -> checkAgingTarget(
+			HexapawnRules.STANDARD, 30, HexapawnAging.Eviction.LEAST_FREQUENTLY_USED));
+		run("aging keeps target size, 4x4 LRU", () -> checkAgingTarget(
+			new HexapawnRules(4, 4), 540, HexapawnAging.Eviction.LEAST_RECENTLY_USED));
+		run("aging keeps target size, 4x4 LFU", () -> checkAgingTarget(
+			new HexapawnRules(4, 4), 540, HexapawnAging.Eviction.LEAST_FREQUENTLY_USED));
+		run("concurrent brain learns as HexapawnBrain, 3x3", () -> checkConcurrentBrain(
+			HexapawnRules.STANDARD));
+		run("concurrent brain learns as HexapawnBrain, 4x4", () -> checkConcurrentBrain(
+			new HexapawnRules(4, 4)));
+		run("concurrent brain rejects replies that are not canonical", () -> 
+			checkConcurrentBrainRejects(HexapawnRules.STANDARD));
+		run("session manager learns every finished game", () -> checkSessionManager(
+			HexapawnRules.STANDARD));
+
+		if (failures > 0) {
+			System.out.println(failures + " check(s) failed");
+			System.exit(1);
+		}
+		System.out.println("All checks passed");
+	}
+
+	private static void run(String name, Runnable check) {
+		try {
+			check.run();
+			System.out.println("ok      " + name);
+		} catch (RuntimeException e) {
+			failures += 1;
+			System.out.println("FAILED  " + name + " :: " + e.getMessage());
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) throw new IllegalStateException(message);
+	}
+
+	/* Train a brain without aging until it is above 'cap' entries, then cap
+	   it.  Every eviction must leave it at the target a tenth below the cap,
+	   never below, whatever the ties between entries. */
+	private static void checkAgingTarget(HexapawnRules rules, int cap, 
+			HexapawnAging.Eviction eviction) {
+		HexapawnBrain brain = new HexapawnBrain(rules, 1);
+		HexapawnSelfPlay selfPlay = new HexapawnSelfPlay(new HexapawnEngine(brain), 
+			new HexapawnRandomStrategy(rules, 2));
+		while (brain.getEntryCount() <= cap) selfPlay.play(1);
+
+		brain.setAging(new HexapawnAging(0, 1, 0, cap, eviction));
+		int target = cap * 9 / 10;
+		for (int game = 0 ; game < 5000 ; game++) {
+			selfPlay.play(1);
+			int entries = brain.getEntryCount();
+			check(entries >= target && entries <= cap, 
+				"brain has " + entries + " entries after game " + game + 
+				", expected " + target + " to " + cap);
+		}
+	}
+
+	/* Teach the same random games to a HexapawnBrain one at a time, and to a
+	   HexapawnConcurrentBrain from four threads at once.  Both must end up
+	   with the same counts, and so does a concurrent brain copied from the
+	   sequential one. */
+	private static void checkConcurrentBrain(HexapawnRules rules) {
+		int games = 20000, threads = 4;
+		long[][] played = new long[games][];
+		int[] winners = new int[games];
+		SplittableRandom rand = new SplittableRandom(3);
+		for (int game = 0 ; game < games ; game++) {
+			played[game] = randomGame(rules, rand);
+			winners[game] = rules.outcome(played[game][played[game].length - 1], 
+				(played[game].length % 2 == 0) ? 
+					HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE);
+		}
+
+		HexapawnBrain sequential = new HexapawnBrain(rules);
+		for (int game = 0 ; game < games ; game++) {
+			learnGame(sequential, played[game], HexapawnConstants.WHITE_SQUARE, winners[game]);
+		}
+
+		HexapawnConcurrentBrain concurrent = new HexapawnConcurrentBrain(rules);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0 ; t < threads ; t++) {
+			int first = t;
+			workers[t] = new Thread(() -> {
+				for (int game = first ; game < games ; game += threads) {
+					concurrent.learnGame(played[game], HexapawnConstants.WHITE_SQUARE, winners[game]);
+				}
+			});
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		Map<Long, Map<Long, Integer>> expected = memories(sequential);
+		check(expected.equals(memories(concurrent.snapshot())), 
+			"counts learned concurrently differ from counts learned in turn");
+		check(concurrent.getTotalMemories() == sequential.getTotalMemories(),
+			"total memories " + concurrent.getTotalMemories() + ", expected " + 
+			sequential.getTotalMemories());
+		check(expected.equals(memories(new HexapawnConcurrentBrain(sequential).snapshot())),
+			"counts copied from a HexapawnBrain differ from the original");
+	}
+
+	/* The default board is its own mirror image, so of the two mirrored 
+	   replies to it the brains only remember the lower.  A concurrent brain 
+	   given the higher directly, or a board that is no reply at all, must 
+	   refuse it rather than drop it. */
+	private static void checkConcurrentBrainRejects(HexapawnRules rules) {
+		long input = rules.getDefaultBoard();
+		int[] moves = new int[rules.getMaxMoves()];
+		int count = rules.generateMoves(input, HexapawnConstants.BLACK_SQUARE, moves);
+		long higher = -1;
+		for (int i = 0 ; i < count ; i++) {
+			long output = HexapawnRules.move(input, moves[i]);
+			if (rules.mirror(output) < output) higher = output;
+		}
+		check(higher != -1, "no reply to the default board has a lower mirror image");
+
+		HexapawnBrain brain = new HexapawnBrain(rules);
+		brain.restore(input, higher, 1);
+		check(throwsIllegalArgument(() -> new HexapawnConcurrentBrain(brain)),
+			"copying a reply that is not canonical was not refused");
+
+		HexapawnConcurrentBrain concurrent = new HexapawnConcurrentBrain(rules);
+		check(throwsIllegalArgument(() -> concurrent.learn(input, input, 
+			HexapawnConstants.BLACK_SQUARE, true)), "learning a board that is no reply was not refused");
+
+		// Learned through the public API the reply is canonicalized first.
+		concurrent.learn(input, higher, HexapawnConstants.BLACK_SQUARE, true);
+		check(concurrent.getTotalMemories() == 3, 
+			"total memories " + concurrent.getTotalMemories() + ", expected 3");
+	}
+
+	private static boolean throwsIllegalArgument(Runnable task) {
+		try {
+			task.run();
+			return false;
+		} catch (IllegalArgumentException e) {
+			return true;
+		}
+	}
+
+	/* Play whole games in several sessions at once through the manager's 
+	   futures, the player making random moves.  After shutdown the shared
+	   brain must hold every finished game, with the counts a HexapawnBrain 
+	   learning the same games in turn has.  Requests to a session that does
+	   not exist must fail through their future. */
+	private static void checkSessionManager(HexapawnRules rules) {
+		int sessions = 8, games = 300;
+		HexapawnSessionManager manager = new HexapawnSessionManager(rules, 4);
+		HexapawnBrain sequential = new HexapawnBrain(rules);
+		SplittableRandom rand = new SplittableRandom(4);
+		int[] moves = new int[rules.getMaxMoves()];
+
+		long[] ids = new long[sessions];
+		HexapawnSession.Reply[] replies = new HexapawnSession.Reply[sessions];
+		List<List<Long>> boards = new ArrayList<List<Long>>();
+		int[] firstMovers = new int[sessions], played = new int[sessions];
+		for (int s = 0 ; s < sessions ; s++) {
+			replies[s] = manager.open().join();
+			ids[s] = replies[s].getSessionId();
+			boards.add(new ArrayList<Long>());
+			boards.get(s).add(replies[s].getBoard());
+			firstMovers[s] = HexapawnConstants.WHITE_SQUARE;
+		}
+
+		int finished = 0;
+		while (finished < sessions * games) {
+			// One request to every session still playing, all in flight at once.
+			List<CompletableFuture<HexapawnSession.Reply>> requests = 
+				new ArrayList<CompletableFuture<HexapawnSession.Reply>>();
+			long[] afterPlayer = new long[sessions];
+			for (int s = 0 ; s < sessions ; s++) {
+				if (replies[s].isGameOver()) {
+					requests.add((played[s] < games) ? manager.nextGame(ids[s]) : null);
+					continue;
+				}
+				long board = replies[s].getBoard();
+				int count = rules.generateMoves(board, HexapawnConstants.WHITE_SQUARE, moves);
+				int move = moves[rand.nextInt(count)];
+				afterPlayer[s] = HexapawnRules.move(board, move);
+				requests.add(manager.move(ids[s], HexapawnRules.moveFrom(move), 
+					HexapawnRules.moveTo(move)));
+			}
+
+			for (int s = 0 ; s < sessions ; s++) {
+				if (requests.get(s) == null) continue;
+				boolean starting = replies[s].isGameOver();
+				HexapawnSession.Reply reply = requests.get(s).join();
+				check(reply.isValid(), "session " + ids[s] + " refused a valid request");
+				replies[s] = reply;
+
+				List<Long> game = boards.get(s);
+				if (starting) {
+					game.clear();
+					game.add(rules.getDefaultBoard());
+					firstMovers[s] = (reply.getBoard() == rules.getDefaultBoard()) ? 
+						HexapawnConstants.WHITE_SQUARE : HexapawnConstants.BLACK_SQUARE;
+				} else {
+					game.add(afterPlayer[s]);
+				}
+				if (reply.getBoard() != game.get(game.size() - 1)) game.add(reply.getBoard());
+
+				if (reply.isGameOver()) {
+					long[] finals = new long[game.size()];
+					for (int i = 0 ; i < finals.length ; i++) finals[i] = game.get(i);
+					learnGame(sequential, finals, firstMovers[s], reply.getResult());
+					played[s] += 1;
+					finished += 1;
+				}
+			}
+		}
+
+		check(failsWithIllegalArgument(manager.move(-1, 0, 0)), "move to an unknown session did not fail");
+		check(failsWithIllegalArgument(manager.nextGame(-1)), "next game of an unknown session did not fail");
+		check(failsWithIllegalArgument(manager.state(-1)), "state of an unknown session did not fail");
+
+		manager.shutdown();
+		HexapawnConcurrentBrain brain = manager.getBrain();
+		check(manager.getGamesLearned() == finished, 
+			"learned " + manager.getGamesLearned() + " games, expected " + finished);
+		check(brain.getTotalMemories() == sequential.getTotalMemories(),
+			"total memories " + brain.getTotalMemories() + ", expected " + 
+			sequential.getTotalMemories());
+		check(memories(sequential).equals(memories(brain.snapshot())),
+			"counts learned by the sessions differ from counts learned in turn");
+	}
+
+	private static boolean failsWithIllegalArgument(CompletableFuture<?> future) {
+		try {
+			future.join();
+			return false;
+		} catch (CompletionException e) {
+			return e.getCause() instanceof IllegalArgumentException;
+		}
+	}
+
+	/* Teach 'brain' the game 'boards' as the engine does, both sides' moves
+	   buffered from 'firstMover' on, then learned for 'winner'. */
+	private static void learnGame(HexapawnBrain brain, long[] boards, int firstMover, int winner) {
+		int player = firstMover;
+		for (int i = 0 ; i + 1 < boards.length ; i++) {
+			brain.addToLearningBuffer(boards[i], boards[i + 1], player);
+			player = opponent(player);
+		}
+		if (winner == HexapawnConstants.EMPTY_SQUARE) {
+			brain.learnFromBuffer();
+		} else {
+			brain.learnFromBuffer(winner);
+		}
+	}
+
+	// Boards of a game of random moves, the board before each move then the final board.
+	private static long[] randomGame(HexapawnRules rules, SplittableRandom rand) {
+		long[] boards = new long[2 * rules.getSquareCount() + 1];
+		int[] moves = new int[rules.getMaxMoves()];
+		long board = rules.getDefaultBoard();
+		int toMove = HexapawnConstants.WHITE_SQUARE, plies = 0;
+
+		boards[0] = board;
+		while (rules.outcome(board, toMove) == HexapawnRules.ONGOING) {
+			int count = rules.generateMoves(board, toMove, moves);
+			board = HexapawnRules.move(board, moves[rand.nextInt(count)]);
+			boards[++plies] = board;
+			toMove = opponent(toMove);
+		}
+		long[] game = new long[plies + 1];
+		System.arraycopy(boards, 0, game, 0, plies + 1);
+		return game;
+	}
+
+	/* Every count in 'brain' by input then output board, so brains can be
+	   compared whatever order they keep them in. */
+	private static Map<Long, Map<Long, Integer>> memories(HexapawnBrain brain) {
+		ByteBuffer in = ByteBuffer.allocate(brain.encodedSize());
+		brain.write(in);
+		in.flip();
+
+		Map<Long, Map<Long, Integer>> memories = new HashMap<Long, Map<Long, Integer>>();
+		in.getInt();
+		int inputs = in.getInt();
+		for (int n = 0 ; n < inputs ; n++) {
+			Map<Long, Integer> outputs = new HashMap<Long, Integer>();
+			memories.put(in.getLong(), outputs);
+			int size = in.getInt();
+			for (int i = 0 ; i < size ; i++) outputs.put(in.getLong(), in.getInt());
+		}
+		return memories;
+	}
+
+	private static int opponent(int color) {
+		return (color == HexapawnConstants.WHITE_SQUARE) ?
+			HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE;
+	}
+}
@@ -1,8 +1,215 @@
+import engine.HexapawnBrain;
+import engine.HexapawnBrainFile;
+import engine.HexapawnEngine;
+import engine.HexapawnMctsStrategy;
+import engine.HexapawnMetrics;
+import engine.HexapawnRules;
+import engine.MoveStrategy;
 import gui.HexapawnGUI;
+import training.HexapawnSelfPlay;
+import training.HexapawnTournament;
+import training.HexapawnTrainer;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
 
 public class Hexapawn {
 
+	private static final String USAGE = 
+		"Usage: Hexapawn [--board WxH] [--brain FILE] [--metrics SECONDS] " + 
+		"[--strategy brain|random|minimax|mcts|perfect] " + 
+		"[--mcts-threads T] [--mcts-playouts N] [--selfplay N " + 
+		"[--opponent random|minimax|mcts|perfect|brain] [--threads T] [--seed S]] " + 
+		"[--tournament N [--players P1,P2,...] [--report FILE.csv|FILE.json] " + 
+		"[--threads T] [--seed S]]";
+
 	public static void main(String[] args) {
-		new HexapawnGUI();
+		int threads = 0, metrics = -1, tournament = 0;
+		// Games of self-play, -1 without --selfplay to open the GUI.
+		int games = -1;
+		// Threads and playouts per move of 'mcts' strategies, 0 for their defaults.
+		int mctsThreads = 0, mctsPlayouts = 0;
+		long seed = System.nanoTime();
+		String opponent = "random", players = "brain,random,minimax", report = null;
+		String strategyName = "brain";
+		HexapawnRules rules = HexapawnRules.STANDARD;
+		String brainPath = null;
+
+		for (int i = 0 ; i < args.length ; i++) {
+			if (args[i].equals("--selfplay") && i + 1 < args.length) {
+				games = parseCount(args[++i]);
+				if (games < 1) exitWithUsage();
+			} else if (args[i].equals("--opponent") && i + 1 < args.length) {
+				opponent = args[++i];
+			} else if (args[i].equals("--strategy") && i + 1 < args.length) {
+				strategyName = args[++i];
+			} else if (args[i].equals("--threads") && i + 1 < args.length) {
+				threads = parseCount(args[++i]);
+				if (threads < 1) exitWithUsage();
+			} else if (args[i].equals("--mcts-threads") && i + 1 < args.length) {
+				mctsThreads = parseCount(args[++i]);
+				if (mctsThreads < 1) exitWithUsage();
+			} else if (args[i].equals("--mcts-playouts") && i + 1 < args.length) {
+				mctsPlayouts = parseCount(args[++i]);
+				if (mctsPlayouts < 1) exitWithUsage();
+			} else if (args[i].equals("--seed") && i + 1 < args.length) {
+				seed = parseSeed(args[++i]);
+			} else if (args[i].equals("--board") && i + 1 < args.length) {
+				rules = parseBoard(args[++i]);
+			} else if (args[i].equals("--metrics") && i + 1 < args.length) {
+				metrics = parseCount(args[++i]);
+				if (metrics < 0) exitWithUsage();
+			} else if (args[i].equals("--brain") && i + 1 < args.length) {
+				brainPath = args[++i];
+			} else if (args[i].equals("--tournament") && i + 1 < args.length) {
+				tournament = parseCount(args[++i]);
+				if (tournament < 1) exitWithUsage();
+			} else if (args[i].equals("--players") && i + 1 < args.length) {
+				players = args[++i];
+			} else if (args[i].equals("--report") && i + 1 < args.length) {
+				report = args[++i];
+			} else {
+				exitWithUsage();
+			}
+		}
+
+		// Metrics are published over JMX, and dumped every 'metrics' seconds if above 0.
+		if (metrics >= 0) HexapawnMetrics.enable(metrics);
+
+		/* Tournaments and threaded training create their own players from 
+		   their names, so only the GUI and single-threaded self-play take the
+		   Monte Carlo options. */
+		boolean mctsOptions = mctsThreads > 0 || mctsPlayouts > 0;
+		if (mctsOptions && (tournament > 0 || (games > 0 && threads > 1))) {
+			exitWithMessage("--mcts-threads and --mcts-playouts only apply to the GUI " + 
+				"and to self-play on one thread");
+		}
+
+		if (tournament > 0) {
+			// Tournaments use every core unless told otherwise.
+			if (threads == 0) threads = Runtime.getRuntime().availableProcessors();
+			System.out.println("Seed: " + seed);
+			try {
+				HexapawnTournament.run(rules, players.split(","), tournament, threads, seed, report);
+			} catch (IllegalArgumentException e) {
+				exitWithMessage(e.getMessage());
+			} catch (IOException e) {
+				exitWithMessage(e.getMessage());
+			}
+			if (report != null) System.out.println("Wrote report to " + report);
+			return;
+		}
+
+		/* The CPU plays from its own brain unless another strategy is asked 
+		   for, the brain still learns from every game. */
+		MoveStrategy strategy = null;
+		if (!strategyName.equals("brain")) {
+			strategy = createStrategy(strategyName, rules, seed + 1, mctsThreads, mctsPlayouts);
+			if (strategy == null) exitWithUsage();
+		}
+
+		if (games < 0) {
+			new HexapawnGUI(rules, 
+				(brainPath == null) ? HexapawnBrainFile.defaultPath(rules) : brainPath, strategy);
+			return;
+		}
+
+		MoveStrategy player = createStrategy(opponent, rules, seed, mctsThreads, mctsPlayouts);
+		if (player == null) exitWithUsage();
+		if (threads == 0) threads = 1;
+
+		// Self-play only keeps its brain when asked to with --brain.
+		HexapawnBrain brain = new HexapawnBrain(rules, seed);
+		HexapawnBrainFile file = (brainPath == null) ? null : new HexapawnBrainFile(brainPath);
+		try {
+			if (file != null && file.load(brain)) {
+				System.out.println("Loaded brain from " + brainPath);
+			}
+		} catch (IOException e) {
+			exitWithMessage(e.getMessage());
+		}
+
+		System.out.println("Seed: " + seed);
+		if (threads == 1) {
+			HexapawnSelfPlay.run(games, brain, player, strategy);
+		} else {
+			HexapawnTrainer.run(games, brain, opponent, 
+				(strategy == null) ? null : strategyName, threads, seed);
+		}
+		if (metrics >= 0) System.out.println(HexapawnMetrics.active().getSummary());
+
+		if (file == null) return;
+		try {
+			file.save(brain);
+			System.out.println("Saved brain to " + brainPath);
+		} catch (IOException e) {
+			exitWithMessage("Could not save brain to " + brainPath + ": " + e.getMessage());
+		}
+	}
+
+	/* Create the strategy named 'name', exiting if it can not play on the 
+	   board.  An "mcts" strategy searches on 'mctsThreads' threads if above 0,
+	   and makes exactly 'mctsPlayouts' playouts a move with no time budget if
+	   above 0, so its moves depend only on the seed. */
+	private static MoveStrategy createStrategy(String name, HexapawnRules rules, long seed,
+			int mctsThreads, int mctsPlayouts) {
+		if (name.equals("mcts")) {
+			HexapawnMctsStrategy mcts = (mctsPlayouts > 0) ? 
+				new HexapawnMctsStrategy(rules, new SplittableRandom(seed), Long.MAX_VALUE) : 
+				new HexapawnMctsStrategy(rules, seed);
+			if (mctsPlayouts > 0) mcts.setPlayoutLimit(mctsPlayouts);
+			if (mctsThreads > 0) mcts.setThreads(mctsThreads);
+			return mcts;
+		}
+
+		try {
+			return HexapawnEngine.createStrategy(name, rules, seed);
+		} catch (IllegalArgumentException e) {
+			exitWithMessage(e.getMessage());
+			return null;
+		}
+	}
+
+	/* Parse a count, returns -1 if 'arg' is not a number.  Callers reject 
+	   counts out of their range, -1 included. */
+	private static int parseCount(String arg) {
+		try {
+			return Integer.parseInt(arg);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static long parseSeed(String arg) {
+		try {
+			return Long.parseLong(arg);
+		} catch (NumberFormatException e) {
+			exitWithUsage();
+			return 0;
+		}
+	}
+
+	// Parse a board size written as WIDTHxHEIGHT, e.g. 4x4.
+	private static HexapawnRules parseBoard(String arg) {
+		String[] size = arg.split("x");
+		if (size.length != 2) exitWithUsage();
+
+		try {
+			return new HexapawnRules(Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+		} catch (NumberFormatException e) {
+			exitWithUsage();
+		} catch (IllegalArgumentException e) {
+			exitWithMessage(e.getMessage());
+		}
+		return null;
+	}
+
+	private static void exitWithUsage() {
+		exitWithMessage(USAGE);
+	}
+
+	private static void exitWithMessage(String message) {
+		System.out.println(message);
+		System.exit(1);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package engine;
+
+/* A read-only view of a packed board, answering what is on each square 
+   straight from the packed form instead of copying it into an int[].  Views
+   are immutable, so one taken on the engine's thread can be read from any
+   other. */
+public final class BoardView {
+
+	private final HexapawnRules rules;
+	private final long board;
+
+	public BoardView(HexapawnRules rules, long board) {
+		this.rules = rules;
+		this.board = board;
+	}
+
+	public HexapawnRules getRules() {
+		return rules;
+	}
+
+	// The packed board, see HexapawnRules for the layout.
+	public long getBoard() {
+		return board;
+	}
+
+	public int getSquareCount() {
+		return rules.getSquareCount();
+	}
+
+	// The HexapawnConstants value of the square at 'index'.
+	public int get(int index) {
+		return HexapawnRules.get(board, index);
+	}
+
+	// Copy the board into the int[] form, one HexapawnConstants value per square.
+	public int[] toArray() {
+		return rules.toArray(board);
+	}
+}
@@ -0,0 +1,67 @@
+package engine;
+
+/* How a HexapawnBrain forgets, so a brain that learns forever keeps a steady
+   size and keeps adapting to the opponents it plays now.
+
+   Every 'decayInterval' games learned the count of every remembered move is
+   multiplied by 'decayFactor' (0.5 halves them), and moves left with a 
+   count below 'pruneBelow' are forgotten.  If the brain ever remembers 
+   more than 'maxEntries' moves (input/output pairs), it forgets moves until
+   it is a tenth below the cap, starting from the least frequently used 
+   (lowest count) or the least recently used (longest since learned or 
+   played), as 'eviction' says.  A decayInterval or maxEntries of 0 turns 
+   that part off. */
+public class HexapawnAging {
+
+	public enum Eviction { LEAST_FREQUENTLY_USED, LEAST_RECENTLY_USED }
+
+	private final int decayInterval, pruneBelow, maxEntries;
+	private final double decayFactor;
+	private final Eviction eviction;
+
+	public HexapawnAging(int decayInterval, double decayFactor, int pruneBelow, 
+			int maxEntries, Eviction eviction) {
+		if (decayInterval < 0 || maxEntries < 0 || pruneBelow < 0) {
+			throw new IllegalArgumentException("Aging intervals and limits can not be negative");
+		}
+		if (decayFactor <= 0 || decayFactor > 1) {
+			throw new IllegalArgumentException("Decay factor must be above 0 and at most 1");
+		}
+
+		this.decayInterval = decayInterval;
+		this.decayFactor = decayFactor;
+		this.pruneBelow = pruneBelow;
+		this.maxEntries = maxEntries;
+		this.eviction = eviction;
+	}
+
+	// Halve every count every 'decayInterval' games, with no cap.
+	public static HexapawnAging halving(int decayInterval) {
+		return new HexapawnAging(decayInterval, 0.5, 1, 0, Eviction.LEAST_FREQUENTLY_USED);
+	}
+
+	public int getDecayInterval() {
+		return decayInterval;
+	}
+
+	public double getDecayFactor() {
+		return decayFactor;
+	}
+
+	public int getPruneBelow() {
+		return pruneBelow;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public Eviction getEviction() {
+		return eviction;
+	}
+
+	public String toString() {
+		return "decay " + decayFactor + " every " + decayInterval + " games, prune below " + 
+			pruneBelow + ", cap " + maxEntries + " " + eviction;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,139 @@
+package engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/* Runs a HexapawnEngine on a thread of its own, so callers such as the GUI
+   never wait on the brain, learning or saving.  Every call is queued to the
+   engine thread in order and answers with a future of the State of the 
+   engine once the call is done; the engine itself is only ever touched from
+   the engine thread. */
+public class HexapawnAsyncEngine {
+
+	private final HexapawnEngine engine;
+	private final ExecutorService executor;
+
+	/* Take over 'engine'.  It must not be used directly once handed over. */
+	public HexapawnAsyncEngine(HexapawnEngine engine) {
+		this.engine = engine;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "hexapawn-engine");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public HexapawnRules getRules() {
+		return engine.getRules();
+	}
+
+	public int getPlayerColor() {
+		return engine.getPlayerColor();
+	}
+
+	// The current state of the engine.
+	public CompletableFuture<State> state() {
+		return CompletableFuture.supplyAsync(() -> new State(engine, true), executor);
+	}
+
+	/* Attempt to move the player's pawn from 'from' to 'to'.  A valid move 
+	   is added to the learning buffer, and if it ends the game the engine
+	   learns from it.  The State says whether the move was valid. */
+	public CompletableFuture<State> move(Move move) {
+		return CompletableFuture.supplyAsync(() -> {
+			long pre = engine.getBoard();
+			if (!engine.move(move)) return new State(engine, false);
+
+			engine.addToLearningBuffer(pre, engine.getBoard(), engine.getPlayerColor());
+			return finishTurn(engine.getPlayerColor());
+		}, executor);
+	}
+
+	/* Let the brain make the CPU's move, learning from the game if it ends
+	   it. */
+	public CompletableFuture<State> moveCPU() {
+		return CompletableFuture.supplyAsync(() -> {
+			long pre = engine.getBoard();
+			engine.makeMove();
+			engine.addToLearningBuffer(pre, engine.getBoard(), engine.getCPUColor());
+			return finishTurn(engine.getCPUColor());
+		}, executor);
+	}
+
+	/* Prepare the next game of the series after a game has completed, see
+	   HexapawnEngine.refresh(). */
+	public CompletableFuture<State> refresh() {
+		return CompletableFuture.supplyAsync(() -> {
+			engine.refresh();
+			return new State(engine, true);
+		}, executor);
+	}
+
+	// Start a new series, see HexapawnEngine.reset().
+	public CompletableFuture<State> reset() {
+		return CompletableFuture.supplyAsync(() -> {
+			engine.reset();
+			return new State(engine, true);
+		}, executor);
+	}
+
+	private State finishTurn(int mover) {
+		State state = new State(engine, true);
+		if (state.isGameOver()) engine.learn(mover);
+		return state;
+	}
+
+	/* What the engine looked like when a call finished, safe to read from 
+	   any thread. */
+	public static class State {
+
+		private final boolean valid;
+		private final BoardView board;
+		private final Outcome outcome;
+		private final int gamesPlayed, playerWins, cpuWins;
+
+		private State(HexapawnEngine engine, boolean valid) {
+			this.valid = valid;
+			this.board = engine.getView();
+			this.outcome = engine.getOutcome();
+			this.gamesPlayed = engine.getCurrentSeriesLength();
+			this.playerWins = engine.getPlayerWinTotal();
+			this.cpuWins = engine.getCPUWinTotal();
+		}
+
+		// False if the call was a move that was not valid.
+		public boolean isValid() {
+			return valid;
+		}
+
+		public boolean isGameOver() {
+			return valid && outcome.isOver();
+		}
+
+		// The board, see HexapawnEngine.getView().
+		public BoardView getBoard() {
+			return board;
+		}
+
+		// Outcome of the game, see HexapawnEngine.getOutcome().
+		public Outcome getOutcome() {
+			return outcome;
+		}
+
+		public int getCurrentSeriesLength() {
+			return gamesPlayed;
+		}
+
+		public int getPlayerWinTotal() {
+			return playerWins;
+		}
+
+		public int getCPUWinTotal() {
+			return cpuWins;
+		}
+	}
+}
\ No newline at end of file
@@ -1,257 +1,712 @@
 package engine;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 /* AI for Hexapawn, attmepts to learn based off of past games in a series. */
 public class HexapawnBrain {
 
-	/* A list of BrainStates containing input/ouput vectors correspoding to 
-	   moves on the Hexapawn board. */
-	private ArrayList<BrainState> brain;
-	/* Buffer to hold moves in the current games */
-	protected ArrayList<BrainState> buffer;
+	// Starting size of the memory index, must be a power of two.
+	private static final int INITIAL_CAPACITY = 64;
+	// Starting number of entries in the memory pool.
+	private static final int INITIAL_POOL = 256;
+	// Starting number of moves the learning buffer holds.
+	private static final int INITIAL_BUFFER = 16;
+
+	/* Random generators for brains created without a seed, one per thread so
+	   brains on different threads never contend over one generator. */
+	private static final SplittableRandom ROOT_RANDOM = new SplittableRandom();
+	private static final ThreadLocal<SplittableRandom> THREAD_RANDOM =
+		new ThreadLocal<SplittableRandom>() {
+			protected SplittableRandom initialValue() {
+				synchronized (ROOT_RANDOM) {
+					return ROOT_RANDOM.split();
+				}
+			} 
+		};
+	// Room for the valid moves on any board, for brains created without a seed.
+	private static final ThreadLocal<int[]> THREAD_MOVES = new ThreadLocal<int[]>() {
+		protected int[] initialValue() {
+			return new int[3 * HexapawnRules.MAX_SQUARES];
+		}
+	};
+
+	/* Memories of the moves played from each input board, kept in parallel
+	   primitive arrays with no object per memory.  An open addressing hash
+	   index keyed by the packed input board gives each input a block of
+	   'capacities[slot]' consecutive entries in the pool starting at
+	   'starts[slot]', of which the first 'sizes[slot]' are in use; a slot
+	   with no capacity is empty.  Entry i of the pool holds an output board
+	   'outputs[i]', its weight 'counts[i]', and 'cumulative[i]', the running
+	   total of the weights in its block up to and including it.  Running
+	   totals are kept up to date as counts change, so picking a weighted
+	   output is a binary search over one short run of an int array.
+
+	   A block is sized for every valid move from its input, so it only has
+	   to move (to the end of the pool) if it somehow outgrows that.  Space
+	   left behind by moved blocks is reclaimed when the pool grows.
+
+	   A board and its left-right mirror image play the same, so memories are
+	   only kept under the canonical one of the two (see 
+	   HexapawnRules.canonical), and a move learned on either board counts 
+	   for both. */
+	private long[] keys;
+	private int[] starts, sizes, capacities;
+	private long[] outputs;
+	private int[] counts, cumulative;
+	// Number of games learned when each entry was last used, null unless aging.
+	private long[] stamps;
+	// Entries of the pool given out to blocks.
+	private int used;
+	// Number of input boards, and of input/output pairs, remembered.
+	private int positions, entries;
+	/* Moves in the current game, as the boards before and after the move
+	   seen from the CPU's side (see addToLearningBuffer) and who played it. */
+	private long[] bufferInputs, bufferOutputs;
+	private int[] bufferPlayers;
+	private int bufferSize;
 	protected int totalMemories;
+	// Source of randomness for move selection, null to use THREAD_RANDOM.
+	private SplittableRandom rand;
+	// Rules of the board size this brain plays on.
+	private HexapawnRules rules;
+	/* Reused to hold the valid moves on the board a move is chosen for, null
+	   to use THREAD_MOVES. */
+	private int[] moves;
+	// Replies for the first plies of a game, null to always use the index.
+	private HexapawnOpeningBook book;
+	/* How the brain forgets, null to remember everything.  'games' counts 
+	   the games learned and stamps entries when they are used. */
+	private HexapawnAging aging;
+	private long games;
+	private int gamesSinceDecay;
 
 	public HexapawnBrain() {
-		brain = new ArrayList<BrainState>();
-		buffer = new ArrayList<BrainState>();
+		this(HexapawnRules.STANDARD);
+	}
+
+	// Create a brain whose move selection is reproducible for a given seed.
+	public HexapawnBrain(long seed) {
+		this(HexapawnRules.STANDARD, seed);
+	}
+
+	public HexapawnBrain(HexapawnRules rules) {
+		this(rules, null, new HexapawnOpeningBook(rules, HexapawnOpeningBook.DEFAULT_PLIES));
+	}
+
+	public HexapawnBrain(HexapawnRules rules, long seed) {
+		this(rules, new SplittableRandom(seed), 
+			new HexapawnOpeningBook(rules, HexapawnOpeningBook.DEFAULT_PLIES));
+	}
+
+	private HexapawnBrain(HexapawnRules rules, SplittableRandom rand, HexapawnOpeningBook book) {
+		keys = new long[INITIAL_CAPACITY];
+		starts = new int[INITIAL_CAPACITY];
+		sizes = new int[INITIAL_CAPACITY];
+		capacities = new int[INITIAL_CAPACITY];
+		outputs = new long[INITIAL_POOL];
+		counts = new int[INITIAL_POOL];
+		cumulative = new int[INITIAL_POOL];
+		bufferInputs = new long[INITIAL_BUFFER];
+		bufferOutputs = new long[INITIAL_BUFFER];
+		bufferPlayers = new int[INITIAL_BUFFER];
 		totalMemories = 0;
+		this.rules = rules;
+		this.rand = rand;
+		this.book = book;
+		this.moves = (rand == null) ? null : new int[rules.getMaxMoves()];
 	}
 
-	/* Add a pair of input/ouput vectors corresponding to a Hexapawn move by 
-	  'player' to learning buffer to possibly be used to train the 
-	  HexapawnBrain in future */
-	public void addToLearningBuffer(int[] input, int[] output, int player) {
+	public HexapawnRules getRules() {
+		return rules;
+	}
 
-		BrainState state = null;
-		int[] inpcopy = new int[9];
-		int[] outcopy = new int[9];
+	public int getPositionCount() {
+		return positions;
+	}
 
-		System.arraycopy(input, 0, inpcopy, 0 , input.length);
-		System.arraycopy(output, 0, outcopy, 0 , output.length);
+	public int getEntryCount() {
+		return entries;
+	}
+
+	public int getTotalMemories() {
+		return totalMemories;
+	}
+
+	public HexapawnAging getAging() {
+		return aging;
+	}
+
+	/* Make the brain forget as 'aging' says from now on, null to remember 
+	   everything.  Copies of the brain do not inherit its aging. */
+	public void setAging(HexapawnAging aging) {
+		this.aging = aging;
+		gamesSinceDecay = 0;
+		if (aging == null) {
+			stamps = null;
+		} else if (stamps == null) {
+			stamps = new long[outputs.length];
+			Arrays.fill(stamps, games);
+		}
+	}
+
+	/* Answer the boards the CPU can face in the first 'plies' plies of a game
+	   from an opening book rather than the memory index, 0 for no book.  The
+	   book picks the same moves the index would, only faster.  It is not used
+	   while the brain is aging. */
+	public void setOpeningPlies(int plies) {
+		book = (plies > 0) ? new HexapawnOpeningBook(rules, plies) : null;
+	}
+
+	/* Get a copy of the memories in this brain (not the learning buffer), 
+	   selecting moves with a new random generator seeded with 'seed'. */
+	public HexapawnBrain copy(long seed) {
+		return copyInto(new HexapawnBrain(rules, new SplittableRandom(seed), copyBook()));
+	}
+
+	/* Get a copy of the memories in this brain (not the learning buffer)
+	   without a seed.  As long as nothing learns into the copy, any number 
+	   of threads can get moves from it at once. */
+	public HexapawnBrain copy() {
+		return copyInto(new HexapawnBrain(rules, null, copyBook()));
+	}
+
+	private HexapawnOpeningBook copyBook() {
+		return (book == null) ? null : book.copy();
+	}
+
+	/* The memories are all primitive arrays, so copying them is a few array
+	   copies.  The copy's book is brought up to date here, so threads sharing
+	   the copy never have to. */
+	private HexapawnBrain copyInto(HexapawnBrain copy) {
+		copy.keys = keys.clone();
+		copy.starts = starts.clone();
+		copy.sizes = sizes.clone();
+		copy.capacities = capacities.clone();
+		copy.outputs = Arrays.copyOf(outputs, used);
+		copy.counts = Arrays.copyOf(counts, used);
+		copy.cumulative = Arrays.copyOf(cumulative, used);
+		copy.used = used;
+		copy.positions = positions;
+		copy.entries = entries;
+		copy.totalMemories = totalMemories;
+		if (copy.book != null && copy.book.isStale()) copy.book.refresh(copy);
+		return copy;
+	}
+
+	/* Add everything 'trained' learned since it was copied from 'base' to 
+	   this brain.  Used to fold the memories of a brain trained on its own 
+	   back into a shared brain. */
+	public void merge(HexapawnBrain trained, HexapawnBrain base) {
+		for (int slot = 0 ; slot < trained.keys.length ; slot++) {
+			if (trained.capacities[slot] == 0) continue;
+
+			long input = trained.keys[slot];
+			int old = base.lookup(input);
+			int start = trained.starts[slot];
+			for (int i = start ; i < start + trained.sizes[slot] ; i++) {
+				int index = (old < 0) ? -1 : base.indexOf(old, trained.outputs[i]);
+				int delta = trained.counts[i] - ((index < 0) ? 0 : base.counts[index]);
+				if (delta > 0) remember(slotFor(input), trained.outputs[i], delta);
+			} 
+		}
+		totalMemories += trained.totalMemories - base.totalMemories;
+	}
+
+	/* Bytes needed by write(): totalMemories and the number of inputs, then
+	   for each input the board and its number of outputs, then each output
+	   board with its count. */
+	int encodedSize() {
+		return 2 * 4 + positions * (8 + 4) + entries * (8 + 4);
+	}
+
+	// Write the memories of this brain (not the learning buffer) to 'out'.
+	void write(ByteBuffer out) {
+		out.putInt(totalMemories);
+		out.putInt(positions);
+		for (int slot = 0 ; slot < keys.length ; slot++) {
+			if (capacities[slot] == 0) continue;
+
+			out.putLong(keys[slot]);
+			out.putInt(sizes[slot]);
+			for (int i = starts[slot] ; i < starts[slot] + sizes[slot] ; i++) {
+				out.putLong(outputs[i]);
+				out.putInt(counts[i]);
+			} 
+		}
+	}
+
+	// Add memories written by write() to this brain.
+	void read(ByteBuffer in) {
+		totalMemories += in.getInt();
+		int inputs = in.getInt();
+		for (int n = 0 ; n < inputs ; n++) {
+			long input = in.getLong();
+			int size = in.getInt();
+			for (int i = 0 ; i < size ; i++) {
+				remember(slotFor(input), in.getLong(), in.getInt());
+			} 
+		}
+	}
+
+	/* Add a pair of packed input/ouput boards corresponding to a Hexapawn 
+	  move by 'player' to learning buffer to possibly be used to train the 
+	  HexapawnBrain in future */
+	public void addToLearningBuffer(long input, long output, int player) {
+		if (bufferSize == bufferInputs.length) {
+			bufferInputs = Arrays.copyOf(bufferInputs, bufferSize * 2);
+			bufferOutputs = Arrays.copyOf(bufferOutputs, bufferSize * 2);
+			bufferPlayers = Arrays.copyOf(bufferPlayers, bufferSize * 2);
+		}
 
 		/* If the move was not done by the CPU we flip the situation to 
 		   simulate as if the CPU had done the move, and thus can learn 
 		   from having it in its brain */
-		state =  ( player == HexapawnConstants.WHITE_SQUARE ) ? new BrainState(translateToBlack(inpcopy), translateToBlack(outcopy), player) : new BrainState(input, output, player); 
-
-		buffer.add(state);
+		bufferInputs[bufferSize] = rules.asBlack(input, player);
+		bufferOutputs[bufferSize] = rules.asBlack(output, player);
+		bufferPlayers[bufferSize++] = player;
 	}
 
 	/* Function called if game result is WIN.  Adds all moves by winner in 
 	   buffer to brain */
 	public void learnFromBuffer( int winner ) {
-		for (BrainState state : buffer) {
-			if ( state.player == winner ) addState( state, true );
+		HexapawnMetrics metrics = HexapawnMetrics.active();
+		long start = (metrics == null) ? 0 : System.nanoTime();
+
+		for (int i = 0 ; i < bufferSize ; i++) {
+			if ( bufferPlayers[i] == winner ) addState( bufferInputs[i], bufferOutputs[i], true );
 		}
-		buffer.clear();
+		bufferSize = 0;
+		age(1);
+
+		if (metrics != null) metrics.recordLearn(System.nanoTime() - start, this);
 	}
 
 	/* Function called if game result is DRAW. Adds all moves by both players 
 	   in buffer to brain */
 	public void learnFromBuffer() {
-		for (BrainState state : buffer) {
-			addState(state, false);
-		}
-		buffer.clear();
-	}
-
-	// Flip the order of the arr then flip all white pawns to black and vice versa.
-	public int[] translateToBlack(int[] arr) {
-		int[] temp = new int[9];
-
-		temp[0] = arr[8];
-		temp[1] = arr[7];
-		temp[2] = arr[6];
-		temp[3] = arr[5];
-		temp[4] = arr[4];
-		temp[5] = arr[3];
-		temp[6] = arr[2];
-		temp[7] = arr[1];
-		temp[8] = arr[0];
-
-		for (int i = 0 ; i < 9 ; i++) {
-			if(temp[i] == HexapawnConstants.WHITE_SQUARE) {
-				temp[i] = HexapawnConstants.BLACK_SQUARE;
-			} else if (temp[i] == HexapawnConstants.BLACK_SQUARE) {
-				temp[i] = HexapawnConstants.WHITE_SQUARE;
-			}
+		HexapawnMetrics metrics = HexapawnMetrics.active();
+		long start = (metrics == null) ? 0 : System.nanoTime();
+
+		for (int i = 0 ; i < bufferSize ; i++) {
+			addState(bufferInputs[i], bufferOutputs[i], false);
 		}
+		bufferSize = 0;
+		age(1);
 
-		return temp;
-	}
-
-	/* Add a weighted BrainState to the brain based on whether the move is 
-	   part of a winning path or not */
-	public void addState( BrainState state, boolean isWinner ) {
-		for (BrainState memory : brain) {
-			// If input/output pair already present in brain...
-			if (Arrays.equals(memory.input, state.input) && 
-				Arrays.equals(memory.output, state.output)) {
-				// Increment frequency count of matched input/output pair
-				if (isWinner) {
-					/* We value moves from winning paths more, thus they 
-					  are weighted 50% more heavily than moves from a DRAW path */
-					memory.count += 3;
-					totalMemories += 3;
-				} else {
-					/* Increment based on move from DRAW path */
-					memory.count += 2;
-					totalMemories += 2;
-				}
-				return;
-			} 
+		if (metrics != null) metrics.recordLearn(System.nanoTime() - start, this);
+	}
+
+	/* Learn every move in 'batch' in one pass, giving every move the count
+	   learning each game of the batch in turn would.  Moves new to the brain
+	   may be kept in a different order, and the brain ages once for the 
+	   whole batch (so decays at most once) rather than after each game.  The
+	   learning buffer is left alone. */
+	public void learnBatch(HexapawnLearningBatch batch) {
+		HexapawnMetrics metrics = HexapawnMetrics.active();
+		long start = (metrics == null) ? 0 : System.nanoTime();
+
+		for (int n = 0 ; n < batch.capacity() ; n++) {
+			int weight = batch.weight(n);
+			if (weight == 0) continue;
+
+			/* A pair learned for the first time starts one below its weight,
+			   as in addState. */
+			int slot = slotFor(batch.input(n));
+			long output = batch.output(n);
+			remember(slot, output, (indexOf(slot, output) >= 0) ? weight : weight - 1);
+			totalMemories += weight;
 		}
+		age(batch.getGameCount());
 
-		// Input/output pair not found in brain, must add...
-		state.player = -1;
+		if (metrics != null) metrics.recordLearn(System.nanoTime() - start, this);
+	}
 
-		// Increment frequency count based on same rules as above.
-		if (isWinner) {
-			state.count += 3;
-			totalMemories += 3;
+	// Flip the order of the board then flip all white pawns to black and vice versa.
+	public long translateToBlack(long board) {
+		return rules.flip(board);
+	}
+
+	/* Add a move from the learning buffer to the brain, weighted by whether
+	   the move is part of a winning path or not */
+	private void addState( long input, long output, boolean isWinner ) {
+		/* We value moves from winning paths more, thus they are weighted 50%
+		   more heavily than moves from a DRAW path */
+		int weight = isWinner ? 3 : 2;
+		output = rules.canonicalOutput(input, output);
+		int slot = slotFor(rules.canonical(input));
+
+		// If input/output pair already present in brain...
+		if (indexOf(slot, output) >= 0) {
+			// Increment frequency count of matched input/output pair
+			remember(slot, output, weight);
 		} else {
-			state.count += 2;
-			totalMemories += 2;
+			// Input/output pair not found in brain, must add...
+			remember(slot, output, weight - 1);
 		}
-			
-		brain.add(state);
+		totalMemories += weight;
 	}
 
 	/* Get a board representing the game state after a CPU move on the board 
 	  passed as 'inp' */
-	public int[] getMove(int[] inp) {
-		return (brain.isEmpty()) ? getRandomMove(inp) : getSmartMove(inp);
-	}
-
-	/* Get a move based on past game results */
-	private int[] getSmartMove( int[] input ) {
-		/* List to store BrainStates in the brain where 'input' 
-		  (current engine.board state) matches the input state stored in the 
-		  brain already */
-		ArrayList<BrainState> possibles = new ArrayList<BrainState>();
-		/* For selecting a random possible move base on the frequency of move 
-		   in winning and tieing paths */
-		ArrayList<Integer> intervals = new ArrayList<Integer>();
-		int totalHistoricalMovesFromInputState = 0;
-
-		for (BrainState memory : brain) {
-			if (Arrays.equals(memory.input, input)){
-				/* If entry in the brain has the same input value as the one 
-				   passed to the function we add it to a list of possible moves
-				   from the given input state. */
-				possibles.add(memory.copyState());
-				/* Update count of how many times this input state has been 
-				   encountered in the current game series */
-				totalHistoricalMovesFromInputState += memory.count;
-			}	
+	public long getMove(long inp) {
+		HexapawnMetrics metrics = HexapawnMetrics.active();
+		if (metrics == null) {
+			return (positions == 0) ? getRandomMove(inp) : getSmartMove(inp, null);
 		}
 
-		/* If the HexapawnBrain does not contain any moves from the 
-		   given input state we generate a random move */
-		if (possibles.isEmpty()) return getRandomMove( input );
-		
-		// Examine each possible move from the given input state 
-		for (int i = 0; i < possibles.size() ; i++) {
-			BrainState mem = possibles.get(i);
-			/* Calculate percentage of total moves from this input state 
-			   accounted for by mem (this possible move we are currently looking at) */
-			double range = (double)mem.count/totalHistoricalMovesFromInputState;
-			/* normalize decimal ratio into value between 0 and 1000, the sum 
-				of all intervals of all possible moves will be 1000  */
-			int interval = (int)(range * 1000);
-			
-
-			/* Add all previously stored intervals to the calculated interval.  This 
-			  generates a weighted division of the range  0 - 1000 based on the 
-			  frequency of the move. 
-				ex. If move x has happened 2 times and move y has happened 3 
-					times, the range 1-400 represnets move x, and the range 
-					401-1000 represents move y 
-			  	*/
-			
-			if (i > 0) {
-				interval += intervals.get(i-1);
+		long start = System.nanoTime();
+		long output;
+		if (positions == 0) {
+			output = getRandomMove(inp);
+			metrics.randomMove();
+		} else {
+			output = getSmartMove(inp, metrics);
+		}
+		metrics.recordMove(System.nanoTime() - start);
+		return output;
+	}
+
+	/* Get a move based on past game results.  Each output remembered from
+	   'input' is picked with probability proportional to its count, found by
+	   binary searching a random number in the running totals of the counts.
+	   The kind of move chosen is counted in 'metrics' unless it is null. */
+	private long getSmartMove( long input, HexapawnMetrics metrics ) {
+		// Opening boards are answered from the book, which never stamps entries.
+		if (book != null && stamps == null) {
+			int entry = book.find(input);
+			if (entry >= 0) {
+				if (book.isStale()) book.refresh(this);
+				if (book.size(entry) > 0) {
+					if (metrics != null) metrics.smartMove();
+					return book.pick(entry, random());
+				}
 			}
-			
+		}
 
-			if (interval >= 999) interval = 1000;
+		long key = rules.canonical(input);
+		int slot = lookup(key);
 
-			// Add the newly generated interval.
-			intervals.add(interval);
+		/* If the HexapawnBrain does not contain any moves from the 
+		   given input state we pick a random valid move */
+		if (slot < 0) {
+			if (metrics != null) metrics.fallbackMove();
+			return getRandomMove( input );
 		}
+		if (metrics != null) metrics.smartMove();
 
-		// Generate random integer up to 1000.
-		Random r = new Random();
-		int index = r.nextInt(1000);
+		int index = pick(slot, random());
+		if (stamps != null) stamps[index] = games;
 
-		int base = 0;
-		/* If the random integer lies in interval[i-1] and interval[i] 
-		  (interval[i<0] = 0), we select possible[i] as our move */
-		for (int i = 0; i < intervals.size() ; i++) {
-			if (index > base && index <= intervals.get(i)) {
-				return possibles.get(i).output;
-			}
-			base = intervals.get(i);
+		// Map the move back if it was remembered on the mirror image.
+		long output = outputs[index];
+		return (key == input) ? output : rules.mirror(output);
+	}
+
+	/* Pick uniformly between every valid move on the board input state inp.
+	   Returns inp unchanged if the CPU has no valid move. */
+	private long getRandomMove( long inp ) {
+		int[] moves = validMoves();
+		int count = rules.generateMoves(inp, HexapawnConstants.BLACK_SQUARE, moves);
+		if (count == 0) return inp;
+
+		return HexapawnRules.move(inp, moves[random().nextInt(count)]);
+	}
+
+	private int[] validMoves() {
+		return (this.moves != null) ? this.moves : THREAD_MOVES.get();
+	}
+
+	private SplittableRandom random() {
+		return (rand != null) ? rand : THREAD_RANDOM.get();
+	}
+
+	/* Add 'count' to the count of 'output' from the canonical board 'input',
+	   for brains copied from elsewhere.  Leaves totalMemories alone. */
+	void restore(long input, long output, int count) {
+		remember(slotFor(input), output, count);
+	}
+
+	/* Copy the outputs remembered from 'board' (facing the same way as the
+	   board) and the running totals of their counts into 'replies' and 
+	   'totals' from 'offset', at most 'limit' of them.  Returns how many 
+	   were copied, 0 if the board has never been learned from. */
+	int replies(long board, long[] replies, int[] totals, int offset, int limit) {
+		long key = rules.canonical(board);
+		int slot = lookup(key);
+		if (slot < 0) return 0;
+
+		int start = starts[slot], size = Math.min(sizes[slot], limit);
+		for (int i = 0 ; i < size ; i++) {
+			long output = outputs[start + i];
+			replies[offset + i] = (key == board) ? output : rules.mirror(output);
+			totals[offset + i] = cumulative[start + i];
+		}
+		return size;
+	}
+
+	/* Pick the pool index of an output from the memories in 'slot' with
+	   probability proportional to its count: the first output whose running
+	   total is above a uniform random number below the total of all counts. */
+	private int pick(int slot, SplittableRandom rand) {
+		int low = starts[slot], high = low + sizes[slot] - 1;
+		long target = rand.nextLong(cumulative[high]);
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulative[middle] > target) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			} 
+		}
+		return low;
+	}
+
+	// Pool index of 'output' in the memories in 'slot', -1 if it has not been learned.
+	private int indexOf(int slot, long output) {
+		int start = starts[slot];
+		for (int i = start ; i < start + sizes[slot] ; i++) {
+			if (outputs[i] == output) return i;
+		}
+		return -1;
+	}
+
+	/* Add 'count' to the count of 'output' in the memories in 'slot', adding
+	   the output (and counting the new entry) if it is new. */
+	private void remember(int slot, long output, int count) {
+		int index = indexOf(slot, output);
+
+		if (index < 0) {
+			if (sizes[slot] == capacities[slot]) move(slot, capacities[slot] * 2);
+			index = starts[slot] + sizes[slot]++;
+			outputs[index] = output;
+			counts[index] = 0;
+			cumulative[index] = (index == starts[slot]) ? 0 : cumulative[index - 1];
+			entries += 1;
+		}
+
+		counts[index] += count;
+		if (stamps != null) stamps[index] = games;
+		if (book != null) book.invalidate(keys[slot]);
+		int end = starts[slot] + sizes[slot];
+		for (int i = index ; i < end ; i++) {
+			cumulative[i] += count;
 		}
+	}
 
-		// If all else fails (it shouldn't) return a random move.
-		return getRandomMove(input);
+	// Move the block of 'slot' to the end of the pool, with room for 'capacity' entries.
+	private void move(int slot, int capacity) {
+		reserve(capacity);
+		int start = starts[slot], size = sizes[slot];
+		System.arraycopy(outputs, start, outputs, used, size);
+		System.arraycopy(counts, start, counts, used, size);
+		System.arraycopy(cumulative, start, cumulative, used, size);
+		if (stamps != null) System.arraycopy(stamps, start, stamps, used, size);
+
+		starts[slot] = used;
+		capacities[slot] = capacity;
+		used += capacity;
 	}
 
-	// Generate a random move based on the board input state inp.
-	private int[] getRandomMove( int[] inp ) {
-		Random rand = new Random();
-		int from = -1, to =-1;
+	/* Make room for 'capacity' more entries at the end of the pool, packing
+	   the blocks together into a larger pool if there is not. */
+	private void reserve(int capacity) {
+		if (used + capacity <= outputs.length) return;
 
-		do {
-			from = rand.nextInt(9);
-			to = rand.nextInt(9);
+		int live = capacity;
+		for (int slot = 0 ; slot < keys.length ; slot++) {
+			live += capacities[slot];
+		}
+		repack(keys.length, Math.max(INITIAL_POOL, 2 * live), false);
+	}
 
-			if (inp[from] == HexapawnConstants.BLACK_SQUARE) {
-				if (HexapawnEngine.isValidMove(inp, from ,to)) {
-					break;
+	/* Count 'learned' more games learned, then decay, prune and evict 
+	   memories as the brain's aging says. */
+	private void age(int learned) {
+		games += learned;
+		if (aging == null) return;
+
+		boolean changed = false;
+		gamesSinceDecay += learned;
+		if (aging.getDecayInterval() > 0 && gamesSinceDecay >= aging.getDecayInterval()) {
+			gamesSinceDecay = 0;
+			int minimum = Math.max(1, aging.getPruneBelow());
+			for (int slot = 0 ; slot < keys.length ; slot++) {
+				int start = starts[slot];
+				for (int i = start ; i < start + sizes[slot] ; i++) {
+					int count = (int)(counts[i] * aging.getDecayFactor());
+					counts[i] = (count < minimum) ? 0 : count;
+				}
+				compact(slot);
+			} 
+			changed = true;
+		}
+
+		if (aging.getMaxEntries() > 0 && entries > aging.getMaxEntries()) {
+			evict(entries - aging.getMaxEntries() * 9 / 10);
+			changed = true;
+		}
+		if (changed) rebuild();
+	}
+
+	/* Forget exactly 'count' entries, the least frequently or least recently
+	   used first.  Ties are broken in pool order, so a brain whose entries
+	   all score the same (as after aging is turned on) keeps the rest. */
+	private void evict(int count) {
+		boolean recent = aging.getEviction() == HexapawnAging.Eviction.LEAST_RECENTLY_USED;
+		long[] scores = new long[entries];
+		int n = 0;
+		for (int slot = 0 ; slot < keys.length ; slot++) {
+			int start = starts[slot];
+			for (int i = start ; i < start + sizes[slot] ; i++) {
+				scores[n++] = recent ? stamps[i] : counts[i];
+			} 
+		}
+		count = Math.min(count, n);
+		if (count <= 0) return;
+		Arrays.sort(scores, 0, n);
+
+		// Forget everything below the cutoff, then as many entries on it as are still needed.
+		long cutoff = scores[count - 1];
+		int tied = count;
+		while (tied > 0 && scores[tied - 1] == cutoff) tied--;
+		tied = count - tied;
+
+		for (int slot = 0 ; slot < keys.length ; slot++) {
+			int start = starts[slot];
+			for (int i = start ; i < start + sizes[slot] ; i++) {
+				long score = recent ? stamps[i] : counts[i];
+				if (score < cutoff) {
+					counts[i] = 0;
+				} else if (score == cutoff && tied > 0) {
+					counts[i] = 0;
+					tied--;
 				}
 			} 
-		} while (true);
+			compact(slot);
+		}
+	}
+
+	/* Forget the outputs in 'slot' with a count of 0 and bring the running
+	   totals up to date. */
+	private void compact(int slot) {
+		int start = starts[slot], kept = start;
+		int total = 0;
+		for (int i = start ; i < start + sizes[slot] ; i++) {
+			if (counts[i] == 0) continue;
+
+			outputs[kept] = outputs[i];
+			counts[kept] = counts[i];
+			if (stamps != null) stamps[kept] = stamps[i];
+			total += counts[i];
+			cumulative[kept++] = total;
+		}
+		sizes[slot] = kept - start;
+	}
+
+	/* Rebuild the index and pool after memories were forgotten, dropping
+	   inputs with nothing left and shrinking both to fit.  totalMemories
+	   becomes the total of the counts that are left. */
+	private void rebuild() {
+		int live = 0;
+		positions = 0;
+		entries = 0;
+		totalMemories = 0;
+		for (int slot = 0 ; slot < keys.length ; slot++) {
+			if (sizes[slot] == 0) continue;
 
-		inp[to] = inp[from];
-		inp[from] = HexapawnConstants.EMPTY_SQUARE;
+			positions += 1;
+			entries += sizes[slot];
+			live += capacities[slot];
+			totalMemories += cumulative[starts[slot] + sizes[slot] - 1];
+		}
 
-		return inp;
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < 2 * positions) capacity *= 2;
+		repack(capacity, Math.max(INITIAL_POOL, live), true);
+		if (book != null) book.invalidateAll();
 	}
 
-	/* Class used to store "memories" with the brain */
-	private class BrainState {
-		/* The board state before the move, the board state after the move */
-		public int[] input, output;
-		/* Number of times the move occured, player who played the move */
-		public int count, player;
+	/* Move every block into an index of 'capacity' slots and a pool of
+	   'poolCapacity' entries, packed together in slot order.  Inputs with no
+	   outputs are dropped if 'dropEmpty' is set (positions must already not
+	   count them). */
+	private void repack(int capacity, int poolCapacity, boolean dropEmpty) {
+		long[] oldKeys = keys, oldOutputs = outputs, oldStamps = stamps;
+		int[] oldStarts = starts, oldSizes = sizes, oldCapacities = capacities;
+		int[] oldCounts = counts, oldCumulative = cumulative;
+
+		keys = new long[capacity];
+		starts = new int[capacity];
+		sizes = new int[capacity];
+		capacities = new int[capacity];
+		outputs = new long[poolCapacity];
+		counts = new int[poolCapacity];
+		cumulative = new int[poolCapacity];
+		stamps = (oldStamps == null) ? null : new long[poolCapacity];
+		used = 0;
+
+		int mask = capacity - 1;
+		for (int i = 0 ; i < oldKeys.length ; i++) {
+			if (oldCapacities[i] == 0 || (dropEmpty && oldSizes[i] == 0)) continue;
+
+			int slot = HexapawnRules.hash(oldKeys[i]) & mask;
+			while (capacities[slot] != 0) slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			starts[slot] = used;
+			sizes[slot] = oldSizes[i];
+			capacities[slot] = oldCapacities[i];
+
+			int start = oldStarts[i], size = oldSizes[i];
+			System.arraycopy(oldOutputs, start, outputs, used, size);
+			System.arraycopy(oldCounts, start, counts, used, size);
+			System.arraycopy(oldCumulative, start, cumulative, used, size);
+			if (oldStamps != null) System.arraycopy(oldStamps, start, stamps, used, size);
+			used += oldCapacities[i];
+		}
+	}
 
-		public BrainState(int[] input, int[] output, int player) {
-			this.input = input;
-			this.output = output;
-			this.player = player;
-			this.count = -1;
+	// Get the slot of the memories from 'input', -1 if it has never been learned from.
+	private int lookup(long input) {
+		int mask = keys.length - 1;
+
+		for (int slot = HexapawnRules.hash(input) & mask ; capacities[slot] != 0 ; slot = (slot + 1) & mask) {
+			if (keys[slot] == input) return slot;
 		}
+		return -1;
+	}
 
-		public BrainState() {
-			this.input = new int[9];
-			this.output = new int[9];
-			this.player = -1;
-			this.count = -1;
+	/* Get the slot of the memories from 'input', adding an empty block with
+	   room for every valid move from it if there are none. */
+	private int slotFor(long input) {
+		int mask = keys.length - 1;
+		int slot = HexapawnRules.hash(input) & mask;
+
+		for ( ; capacities[slot] != 0 ; slot = (slot + 1) & mask) {
+			if (keys[slot] == input) return slot;
 		}
 
-		// Returns a copy of the given BrainState.
-		public BrainState copyState() {
-			BrainState st = new BrainState();
-			System.arraycopy(this.input, 0, st.input, 0, this.input.length);
-			System.arraycopy(this.output, 0, st.output, 0, this.output.length);
-			st.player = this.player;
-			st.count = this.count;
-			return st;
+		// Keep the index at most half full so probes stay short.
+		if (2 * (positions + 1) > keys.length) {
+			repack(keys.length * 2, outputs.length, false);
+			return slotFor(input);
 		}
+
+		int capacity = Math.max(1, rules.generateMoves(input,
+			HexapawnConstants.BLACK_SQUARE, validMoves()));
+		long[] before = keys;
+		reserve(capacity);
+		// Reserving may have packed the pool into a new index, so probe again.
+		if (keys != before) return slotFor(input);
+
+		keys[slot] = input;
+		starts[slot] = used;
+		capacities[slot] = capacity;
+		used += capacity;
+		positions += 1;
+		return slot;
 	}
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,219 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/* A file holding a snapshot of the memories of a HexapawnBrain, so learning
+   survives a restart.
+
+   The file is a small header (magic number, format version, board width and
+   height, the position in the game journal the snapshot was taken at, 
+   totalMemories and the number of input boards) followed by one record per
+   input board: the packed input board, the number of outputs, 
+   then each packed output board with its count.  All values are big endian.
+
+   Loading memory maps the file and reads the records straight out of the 
+   mapping.  Saving in the background encodes the brain on the calling 
+   thread (cheap, no disk access) and leaves the write to a dedicated 
+   thread.  Snapshots are written to a temporary file and forced to disk 
+   before it replaces the old one, and the directory is forced after, so 
+   neither a crash nor a power loss mid-write leaves a half written brain. */
+public class HexapawnBrainFile {
+
+	// "HXPB"
+	private static final int MAGIC = 0x48585042;
+	private static final int VERSION = 2;
+	/* Magic number, version, width, height and journal position, before the
+	   brain's own header.  Version 1 files have no journal position. */
+	private static final int FILE_HEADER_BYTES = 4 * 4 + 8;
+
+	private final Path path, temp;
+	// Latest snapshot waiting to be written, null if there is none.
+	private final AtomicReference<byte[]> pending = new AtomicReference<byte[]>();
+	private final ExecutorService writer;
+	// Journal position recorded in the snapshot last loaded.
+	private long journalPosition;
+
+	public HexapawnBrainFile(String path) {
+		this.path = Paths.get(path);
+		this.temp = Paths.get(path + ".tmp");
+		this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "hexapawn-brain-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		// Give a snapshot still being written a chance to finish on exit.
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				close();
+			}
+		});
+	}
+
+	/* Default file for brains playing by 'rules', in the working directory. */
+	public static String defaultPath(HexapawnRules rules) {
+		return "hexapawn-" + rules + ".brain";
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/* Position in the game journal (see HexapawnJournal) of the first game
+	   the snapshot last loaded had not learned from, 0 if there was none. */
+	public long getJournalPosition() {
+		return journalPosition;
+	}
+
+	/* Read the memories in the file into 'brain', which should be empty.
+	   Returns false if there is no file yet.  Throws IOException if the file
+	   is not a brain snapshot, or is one for another board size. */
+	public boolean load(HexapawnBrain brain) throws IOException {
+		long position = read(path, brain);
+		if (position < 0) return false;
+
+		journalPosition = position;
+		return true;
+	}
+
+	/* Read the memories in the file at 'path' into 'brain' as load does, 
+	   for a brain that is never saved back.  Unlike creating a 
+	   HexapawnBrainFile this starts no writer thread and adds no shutdown 
+	   hook. */
+	public static boolean load(String path, HexapawnBrain brain) throws IOException {
+		return read(Paths.get(path), brain) >= 0;
+	}
+
+	/* Read the snapshot at 'path' into 'brain', returning the journal 
+	   position it was taken at, or -1 if there is no file. */
+	private static long read(Path path, HexapawnBrain brain) throws IOException {
+		if (!Files.exists(path)) return -1;
+
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.remaining() < 2 * 4 || in.getInt() != MAGIC) {
+				throw new IOException(path + " is not a Hexapawn brain");
+			}
+			int version = in.getInt();
+			if (version < 1 || version > VERSION) {
+				throw new IOException(path + " has unsupported version " + version);
+			}
+
+			HexapawnRules rules = brain.getRules();
+			int width = in.getInt(), height = in.getInt();
+			if (width != rules.getWidth() || height != rules.getHeight()) {
+				throw new IOException(path + " holds a brain for a " + width + "x" + 
+					height + " board, not " + rules);
+			}
+			long position = (version >= 2) ? in.getLong() : 0;
+			brain.read(in);
+			return position;
+		} catch (RuntimeException e) {
+			// A truncated or corrupt file runs past the end of the mapping.
+			throw new IOException(path + " is damaged", e);
+		} finally {
+			channel.close();
+		}
+	}
+
+	// Write a snapshot of 'brain' now, on the calling thread.
+	public void save(HexapawnBrain brain) throws IOException {
+		write(encode(brain, 0));
+	}
+
+	/* Write a snapshot of 'brain' in the background, taken when the game
+	   journal was at 'journalPosition' (0 if games are not journalled).  If
+	   several snapshots are saved before the writer gets to them, only the 
+	   newest is written. */
+	public void saveAsync(HexapawnBrain brain, long journalPosition) {
+		if (pending.getAndSet(encode(brain, journalPosition)) != null) return;
+
+		writer.execute(new Runnable() {
+			public void run() {
+				byte[] snapshot = pending.getAndSet(null);
+				if (snapshot == null) return;
+
+				try {
+					write(snapshot);
+				} catch (IOException e) {
+					System.out.println("!!!! Error - could not save brain to " + path + 
+						" :: " + e.getMessage() + " !!!!");
+				}
+			}
+		});
+	}
+
+	// Wait for any snapshot being saved in the background to be written.
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static byte[] encode(HexapawnBrain brain, long journalPosition) {
+		HexapawnRules rules = brain.getRules();
+		ByteBuffer out = ByteBuffer.allocate(FILE_HEADER_BYTES + brain.encodedSize());
+
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		out.putInt(rules.getWidth());
+		out.putInt(rules.getHeight());
+		out.putLong(journalPosition);
+		brain.write(out);
+		return out.array();
+	}
+
+	private synchronized void write(byte[] snapshot) throws IOException {
+		FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, 
+			StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer out = ByteBuffer.wrap(snapshot);
+			while (out.hasRemaining()) channel.write(out);
+			// The data must be on disk before the rename can be.
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, 
+			StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(path.toAbsolutePath().getParent());
+	}
+
+	/* Force the rename of a snapshot in 'directory' to disk.  Directories can
+	   not be opened for this on every platform (Windows refuses), in which 
+	   case the rename is left to the file system. */
+	private static void syncDirectory(Path directory) {
+		if (directory == null) return;
+
+		try {
+			FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ);
+			try {
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			// Not supported here, nothing more can be done.
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package engine;
+
+/* Strategy driven by a HexapawnBrain, picking each move with probability
+   proportional to how often it was learned.  The brain only ever plays
+   black, so for white the board is flipped before asking it for a move and
+   the reply is flipped back.
+
+   A learning strategy teaches the brain its own moves once each game is
+   over, for a brain playing as an opponent; the CPU's brain in a
+   HexapawnEngine is taught by the engine instead. */
+public class HexapawnBrainStrategy implements MoveStrategy {
+
+	private HexapawnBrain brain;
+	private boolean learning;
+
+	// Create a learning strategy with a new brain.
+	public HexapawnBrainStrategy(HexapawnRules rules) {
+		this(new HexapawnBrain(rules), true);
+	}
+
+	// Create a learning strategy whose choices are reproducible for a given seed.
+	public HexapawnBrainStrategy(HexapawnRules rules, long seed) {
+		this(new HexapawnBrain(rules, seed), true);
+	}
+
+	// Play from 'brain', teaching it each game played if 'learning' is set.
+	public HexapawnBrainStrategy(HexapawnBrain brain, boolean learning) {
+		this.brain = brain;
+		this.learning = learning;
+	}
+
+	public HexapawnBrain getBrain() {
+		return brain;
+	}
+
+	public int chooseMove(long board, int color) {
+		long post;
+		int before, after;
+		if (color == HexapawnConstants.BLACK_SQUARE) {
+			post = brain.getMove(board);
+			before = HexapawnRules.black(board);
+			after = HexapawnRules.black(post);
+		} else {
+			post = brain.translateToBlack(brain.getMove(brain.translateToBlack(board)));
+			before = HexapawnRules.white(board);
+			after = HexapawnRules.white(post);
+		}
+		if (learning) brain.addToLearningBuffer(board, post, color);
+
+		// Recover the move from the squares the pawn left and arrived on.
+		return HexapawnRules.encodeMove(
+			Integer.numberOfTrailingZeros(before & ~after),
+			Integer.numberOfTrailingZeros(after & ~before));
+	}
+
+	public void gameOver(int winner) {
+		if (!learning) return;
+
+		if (winner == HexapawnConstants.EMPTY_SQUARE) {
+			brain.learnFromBuffer();
+		} else {
+			brain.learnFromBuffer(winner);
+		}
+	}
+}
@@ -0,0 +1,358 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/* A brain that any number of threads can learn into and get moves from at
+   once, used by server.HexapawnSessionManager to let every session play 
+   from the brain its learner teaches.  It learns the same counts as a 
+   HexapawnBrain taught the same games and picks moves with the same odds,
+   but whole games are learned in one call rather than through a learning 
+   buffer, since a buffer belongs to one game on one thread.  It does not
+   age (see HexapawnAging).
+
+   Memories are kept in an index split into STRIPES stripes, each an open
+   addressing table like HexapawnBrain's.  A memory holds every valid move
+   from its input board up front, so learning a move never changes its 
+   shape, only a count, which is updated with compare-and-set.  The only 
+   lock is taken by a thread adding an input board the stripe has never 
+   seen, which stops once the brain has seen most positions.  Readers never
+   lock: they see a table either before or after a board was added, and 
+   pick a move in one pass over the counts, so every count they base the 
+   choice on is one they read exactly once. */
+public class HexapawnConcurrentBrain {
+
+	// Number of stripes in the index, must be a power of two.
+	private static final int STRIPES = 16;
+	private static final int STRIPE_SHIFT = 32 - Integer.numberOfTrailingZeros(STRIPES);
+	// Starting size of the table of each stripe, must be a power of two.
+	private static final int INITIAL_CAPACITY = 16;
+
+	// Room for the valid moves on any board.
+	private static final ThreadLocal<int[]> THREAD_MOVES = new ThreadLocal<int[]>() {
+		protected int[] initialValue() {
+			return new int[3 * HexapawnRules.MAX_SQUARES];
+		}
+	};
+
+	private final HexapawnRules rules;
+	private final Stripe[] stripes = new Stripe[STRIPES];
+	private final AtomicInteger positions = new AtomicInteger();
+	private final LongAdder entries = new LongAdder(), totalMemories = new LongAdder();
+
+	public HexapawnConcurrentBrain(HexapawnRules rules) {
+		this.rules = rules;
+		for (int i = 0 ; i < STRIPES ; i++) stripes[i] = new Stripe();
+	}
+
+	/* Create a brain remembering everything 'brain' does, e.g. one loaded 
+	   with HexapawnBrainFile.  'brain' is left as it was. */
+	public HexapawnConcurrentBrain(HexapawnBrain brain) {
+		this(brain.getRules());
+
+		ByteBuffer memories = ByteBuffer.allocate(brain.encodedSize());
+		brain.write(memories);
+		memories.flip();
+
+		int total = memories.getInt(), inputs = memories.getInt();
+		for (int n = 0 ; n < inputs ; n++) {
+			long input = memories.getLong();
+			int size = memories.getInt();
+			for (int i = 0 ; i < size ; i++) {
+				long output = memories.getLong();
+				int count = memories.getInt();
+				add(input, output, count, count);
+			}
+		}
+		totalMemories.reset();
+		totalMemories.add(total);
+	}
+
+	public HexapawnRules getRules() {
+		return rules;
+	}
+
+	public int getPositionCount() {
+		return positions.get();
+	}
+
+	public int getEntryCount() {
+		return entries.intValue();
+	}
+
+	public int getTotalMemories() {
+		return totalMemories.intValue();
+	}
+
+	/* Learn from a finished game: 'boards' holds the board before each move
+	   followed by the final board, 'firstMover' is the color of the side 
+	   that moved first and 'winner' the winner (EMPTY_SQUARE for a draw).
+	   As in HexapawnBrain, a draw teaches every move and a win teaches the
+	   winner's moves. */
+	public void learnGame(long[] boards, int firstMover, int winner) {
+		HexapawnMetrics metrics = HexapawnMetrics.active();
+		long start = (metrics == null) ? 0 : System.nanoTime();
+
+		int player = firstMover;
+		for (int i = 0 ; i + 1 < boards.length ; i++) {
+			if (winner == HexapawnConstants.EMPTY_SQUARE) {
+				learn(boards[i], boards[i + 1], player, false);
+			} else if (player == winner) {
+				learn(boards[i], boards[i + 1], player, true);
+			}
+			player = (player == HexapawnConstants.WHITE_SQUARE) ? 
+				HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE;
+		}
+
+		if (metrics != null) {
+			metrics.recordLearn(System.nanoTime() - start, getPositionCount(), 
+				getEntryCount(), getTotalMemories());
+		}
+	}
+
+	/* Learn every move in 'batch', giving every move the count learning 
+	   each game of the batch in turn would.  Each different move costs one 
+	   update however many games it was played in. */
+	public void learnBatch(HexapawnLearningBatch batch) {
+		HexapawnMetrics metrics = HexapawnMetrics.active();
+		long start = (metrics == null) ? 0 : System.nanoTime();
+
+		for (int slot = 0 ; slot < batch.capacity() ; slot++) {
+			int weight = batch.weight(slot);
+			if (weight != 0) add(batch.input(slot), batch.output(slot), weight, weight - 1);
+		}
+
+		if (metrics != null) {
+			metrics.recordLearn(System.nanoTime() - start, getPositionCount(), 
+				getEntryCount(), getTotalMemories());
+		}
+	}
+
+	/* Learn one move by 'player' from 'input' to 'output', weighted as part
+	   of a winning game or a draw as HexapawnBrain.addState does. */
+	public void learn(long input, long output, int player, boolean isWinner) {
+		input = rules.asBlack(input, player);
+		output = rules.asBlack(output, player);
+
+		/* A pair learned for the first time starts one below its weight, as
+		   in HexapawnBrain. */
+		int weight = isWinner ? 3 : 2;
+		add(rules.canonical(input), rules.canonicalOutput(input, output), weight, weight - 1);
+	}
+
+	/* Add 'weight' to the count of 'output' from the canonical board 'input'
+	   and to totalMemories, or set the count to 'first' if it is new.  Throws
+	   IllegalArgumentException if 'output' is not a canonical reply to 
+	   'input', which only a bug in canonicalizing the pair can cause. */
+	private void add(long input, long output, int weight, int first) {
+		Memory memory = memoryFor(input);
+		int index = memory.indexOf(output);
+		if (index < 0) {
+			throw new IllegalArgumentException("Board " + Long.toHexString(output) + 
+				" is not a canonical reply to " + Long.toHexString(input));
+		}
+
+		int count;
+		do {
+			count = memory.counts.get(index);
+		} while (!memory.counts.compareAndSet(index, count, (count == 0) ? first : count + weight));
+
+		if (count == 0) entries.increment();
+		totalMemories.add(weight);
+	}
+
+	/* Get a board representing the game state after a CPU move on the board
+	   passed as 'inp', picking each remembered move with probability 
+	   proportional to its count, or a random valid move if nothing has been
+	   learned from 'inp'. */
+	public long getMove(long inp) {
+		HexapawnMetrics metrics = HexapawnMetrics.active();
+		long start = (metrics == null) ? 0 : System.nanoTime();
+
+		long key = rules.canonical(inp);
+		Memory memory = lookup(key);
+		long output = (memory == null) ? -1 : memory.pick(ThreadLocalRandom.current());
+
+		if (output == -1) {
+			output = getRandomMove(inp);
+			if (metrics != null) {
+				if (positions.get() == 0) {
+					metrics.randomMove();
+				} else {
+					metrics.fallbackMove();
+				}
+			}
+		} else {
+			if (key != inp) output = rules.mirror(output);
+			if (metrics != null) metrics.smartMove();
+		}
+
+		if (metrics != null) metrics.recordMove(System.nanoTime() - start);
+		return output;
+	}
+
+	/* Copy the memories of this brain into a new HexapawnBrain, e.g. to save
+	   it with HexapawnBrainFile.  Moves learned while the copy is taken may
+	   or may not be in it. */
+	public HexapawnBrain snapshot() {
+		HexapawnBrain brain = new HexapawnBrain(rules);
+		for (Stripe stripe : stripes) {
+			Table table = stripe.table;
+			for (int slot = 0 ; slot < table.keys.length ; slot++) {
+				Memory memory = table.memories.get(slot);
+				if (memory == null) continue;
+
+				for (int i = 0 ; i < memory.outputs.length ; i++) {
+					int count = memory.counts.get(i);
+					if (count > 0) brain.restore(table.keys[slot], memory.outputs[i], count);
+				}
+			}
+		}
+		brain.totalMemories = getTotalMemories();
+		return brain;
+	}
+
+	// Pick uniformly between every valid move for black on 'inp'.
+	private long getRandomMove(long inp) {
+		int[] moves = THREAD_MOVES.get();
+		int count = rules.generateMoves(inp, HexapawnConstants.BLACK_SQUARE, moves);
+		if (count == 0) return inp;
+
+		return HexapawnRules.move(inp, moves[ThreadLocalRandom.current().nextInt(count)]);
+	}
+
+	private Stripe stripe(int hash) {
+		return stripes[hash >>> STRIPE_SHIFT];
+	}
+
+	// Get the memories from 'input', null if it has never been learned from.
+	private Memory lookup(long input) {
+		int hash = HexapawnRules.hash(input);
+		return stripe(hash).table.find(input, hash);
+	}
+
+	/* Get the memories from 'input', adding a memory of every valid move 
+	   from it if there is none. */
+	private Memory memoryFor(long input) {
+		int hash = HexapawnRules.hash(input);
+		Stripe stripe = stripe(hash);
+		Memory memory = stripe.table.find(input, hash);
+		if (memory != null) return memory;
+
+		synchronized (stripe) {
+			memory = stripe.table.find(input, hash);
+			if (memory != null) return memory;
+
+			// Keep the table at most half full so probes stay short.
+			if (2 * (stripe.count + 1) > stripe.table.keys.length) stripe.grow();
+			memory = new Memory(outputs(input));
+			stripe.table.insert(input, hash, memory);
+			stripe.count += 1;
+		}
+		positions.incrementAndGet();
+		return memory;
+	}
+
+	/* Every board black can move to from 'input', as the brain remembers 
+	   them (see HexapawnBrain.addState). */
+	private long[] outputs(long input) {
+		int[] moves = THREAD_MOVES.get();
+		int count = rules.generateMoves(input, HexapawnConstants.BLACK_SQUARE, moves);
+
+		long[] outputs = new long[count];
+		int size = 0;
+		for (int i = 0 ; i < count ; i++) {
+			long output = rules.canonicalOutput(input, HexapawnRules.move(input, moves[i]));
+
+			boolean seen = false;
+			for (int j = 0 ; j < size ; j++) seen |= outputs[j] == output;
+			if (!seen) outputs[size++] = output;
+		}
+		return (size == count) ? outputs : Arrays.copyOf(outputs, size);
+	}
+
+	/* One stripe of the index.  'table' is replaced, never changed in place,
+	   when it grows; boards are only added while holding the stripe's lock. */
+	private static class Stripe {
+		public volatile Table table = new Table(INITIAL_CAPACITY);
+		public int count;
+
+		public void grow() {
+			Table old = table, grown = new Table(old.keys.length * 2);
+			for (int slot = 0 ; slot < old.keys.length ; slot++) {
+				Memory memory = old.memories.get(slot);
+				if (memory != null) grown.insert(old.keys[slot], HexapawnRules.hash(old.keys[slot]), memory);
+			}
+			table = grown;
+		}
+	}
+
+	/* Open addressing table from input boards to memories.  A key is written
+	   before its memory is published, so a reader that finds a memory in a 
+	   slot also sees its key. */
+	private static class Table {
+		public final long[] keys;
+		public final AtomicReferenceArray<Memory> memories;
+
+		public Table(int capacity) {
+			keys = new long[capacity];
+			memories = new AtomicReferenceArray<Memory>(capacity);
+		}
+
+		public Memory find(long input, int hash) {
+			int mask = keys.length - 1;
+			for (int slot = hash & mask ; ; slot = (slot + 1) & mask) {
+				Memory memory = memories.get(slot);
+				if (memory == null || keys[slot] == input) return memory;
+			}
+		}
+
+		public void insert(long input, int hash, Memory memory) {
+			int mask = keys.length - 1;
+			int slot = hash & mask;
+			while (memories.get(slot) != null) slot = (slot + 1) & mask;
+			keys[slot] = input;
+			memories.set(slot, memory);
+		}
+	}
+
+	/* Every valid move from one input board with the number of times each 
+	   was learned, 0 if it never was. */
+	private static class Memory {
+		public final long[] outputs;
+		public final AtomicIntegerArray counts;
+
+		public Memory(long[] outputs) {
+			this.outputs = outputs;
+			this.counts = new AtomicIntegerArray(outputs.length);
+		}
+
+		public int indexOf(long output) {
+			for (int i = 0 ; i < outputs.length ; i++) {
+				if (outputs[i] == output) return i;
+			}
+			return -1;
+		}
+
+		/* Pick an output with probability proportional to its count, in one
+		   pass: each output replaces the choice so far with probability of 
+		   its count over the total seen.  Returns -1 if nothing has been 
+		   learned. */
+		public long pick(ThreadLocalRandom rand) {
+			long total = 0, chosen = -1;
+			for (int i = 0 ; i < outputs.length ; i++) {
+				int count = counts.get(i);
+				if (count <= 0) continue;
+
+				total += count;
+				if (rand.nextLong(total) < count) chosen = outputs[i];
+			}
+			return chosen;
+		}
+	}
+}
\ No newline at end of file
@@ -1,25 +1,145 @@
 package engine;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 public class HexapawnEngine {
 
+	private HexapawnRules rules;
 	private HexapawnBrain brain;
-	private String winner;
-	private int games_played, human_wins, cpu_wins, 
-		board[] = new int[HexapawnConstants.BOARD_SIDE_LENGTH * 
-			HexapawnConstants.BOARD_SIDE_LENGTH];
+	// Chooses the CPU's moves, null to play from the brain.
+	private MoveStrategy strategy;
+	// File the brain is kept in between runs, null if it is not kept.
+	private HexapawnBrainFile brain_file;
+	/* Journal of the games learned from since the last snapshot of the 
+	   brain, null if games are not journalled.  The moves of the current 
+	   game are collected in game_moves until it is learned from. */
+	private HexapawnJournal journal;
+	private int[] game_moves = new int[16];
+	private int game_length, first_mover, games_since_snapshot;
+	private int games_played, human_wins, cpu_wins;
+	// Color of the winner of the last completed game (EMPTY_SQUARE if there was none)
+	private int result;
+	/* Outcome of the current game, worked out as each move is made so 
+	   checking for the end of the game costs nothing. */
+	private Outcome outcome = Outcome.ONGOING;
+	// Packed board, see HexapawnRules for the layout.
+	private long board;
+	// View of the board last handed out, kept until the board changes.
+	private BoardView view;
 
 	// Assigning colors to participating parties.
 	private static final int PLAYER_COLOR = HexapawnConstants.WHITE_SQUARE;
 	private static final int CPU_COLOR = HexapawnConstants.BLACK_SQUARE;
 
+	/* Games learned from between brain snapshots when games are journalled,
+	   the journal covers the games in between. */
+	private static final int SNAPSHOT_INTERVAL = 50;
+
 	public HexapawnEngine() {
+		this(HexapawnRules.STANDARD);
+	}
+
+	// Create an engine playing on a board of the size given by 'rules'.
+	public HexapawnEngine(HexapawnRules rules) {
+		this.rules = rules;
 		reset();
 	}
 
-	public int[] getCurrentState() {
-		int[] copy = new int[9];
-		System.arraycopy(board, 0, copy, 0, board.length);
-		return copy;
+	// Create an engine for a new series played by an existing brain.
+	public HexapawnEngine(HexapawnBrain brain) {
+		this(brain.getRules());
+		this.brain = brain;
+	}
+
+	/* Keep the brain in 'file' from now on.  The brain saved there by an 
+	   earlier run (if any) replaces the current one, and after every game
+	   learned from a snapshot is saved in the background.  Throws IOException
+	   if the file exists but can not be read, leaving the engine as it was. */
+	public void setBrainFile(HexapawnBrainFile file) throws IOException {
+		setBrainFile(file, null);
+	}
+
+	/* As setBrainFile(file), also recording every game learned from in 
+	   'journal'.  Games in the journal after the saved snapshot are learned
+	   from again, so games played after the last snapshot are not lost. */
+	public void setBrainFile(HexapawnBrainFile file, HexapawnJournal journal) 
+			throws IOException {
+		HexapawnBrain loaded = new HexapawnBrain(rules);
+		boolean saved = file.load(loaded);
+
+		if (journal != null) {
+			/* A snapshot ahead of the journal is replaced at once, or games
+			   journalled from now on would fall before its position. */
+			boolean behind = journal.isBehind(file.getJournalPosition());
+			if (journal.replay(loaded, file.getJournalPosition()) > 0 || behind) {
+				// Start the next snapshot from the end of the journal.
+				journal.sync();
+				file.saveAsync(loaded, journal.getPosition());
+				saved = true;
+			}
+		}
+		if (saved) brain = loaded;
+		seedPriors();
+		brain_file = file;
+		this.journal = journal;
+		games_since_snapshot = 0;
+	}
+
+	public HexapawnRules getRules() {
+		return rules;
+	}
+
+	/* Choose the CPU's moves with 'strategy' from now on, null to play from
+	   the brain.  The brain keeps learning from every game either way, and
+	   a Monte Carlo strategy searches first the moves it has learned. */
+	public void setStrategy(MoveStrategy strategy) {
+		this.strategy = strategy;
+		seedPriors();
+	}
+
+	public MoveStrategy getStrategy() {
+		return strategy;
+	}
+
+	// Point a Monte Carlo strategy at the current brain for its priors.
+	private void seedPriors() {
+		if (strategy instanceof HexapawnMctsStrategy) {
+			((HexapawnMctsStrategy) strategy).setPriors(brain);
+		}
+	}
+
+	/* Create the strategy named 'name' ("brain", "random", "minimax", "mcts"
+	   or "perfect") for boards of the size given by 'rules', with its 
+	   choices seeded by 'seed'.  A "brain" strategy learns from its own 
+	   games with a brain of its own.  Returns null if the name is not 
+	   recognized.  Throws IllegalArgumentException if the strategy can not 
+	   play on the board. */
+	public static MoveStrategy createStrategy(String name, HexapawnRules rules, long seed) {
+		if (name.equals("random")) return new HexapawnRandomStrategy(rules, seed);
+		if (name.equals("minimax")) return new HexapawnMinimaxStrategy(rules, seed);
+		if (name.equals("mcts")) return new HexapawnMctsStrategy(rules, seed);
+		if (name.equals("brain")) return new HexapawnBrainStrategy(rules, seed);
+		if (name.equals("perfect")) {
+			if (!rules.equals(HexapawnRules.STANDARD)) {
+				throw new IllegalArgumentException(
+					"The perfect strategy only plays on the standard 3x3 board");
+			}
+			return new HexapawnPerfectStrategy();
+		}
+		return null;
+	}
+
+	/* Get a read-only view of the board, used to render it to the GUI.  The
+	   same view is returned until the board changes. */
+	public BoardView getView() {
+		if (view == null || view.getBoard() != board) view = new BoardView(rules, board);
+		return view;
+	}
+
+	// Get the packed representation of the board.
+	public long getBoard() {
+		return board;
 	}
 
 	public int getCurrentSeriesLength() {
@@ -34,8 +154,13 @@ public class HexapawnEngine {
 		return cpu_wins;
 	}
 
-	public String getWinner() {
-		return winner;
+	// Outcome of the current game, ONGOING until it is over.
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	public int getResult() {
+		return result;
 	}
 
 	public int getPlayerColor() {
@@ -46,21 +171,26 @@ public class HexapawnEngine {
 		return CPU_COLOR;
 	}
 
-	/* Add an move by 'player' as an input/output pair of int[] to the 
+	/* Add an move by 'player' as an input/output pair of packed boards to the
 	   learning buffer. */
-	public void addToLearningBuffer( int[] inp, int[] out, int player ) {
+	public void addToLearningBuffer( long inp, long out, int player ) {
 		brain.addToLearningBuffer( inp, out, player );
+		if (journal != null) recordMove(inp, out, player);
 	}
 
-	/* Attempt to move the players peice from 'from' to 'to'. Return true if
-	   the move was valid and successfull, return false otherwise. */
-	public boolean move(int from, int to) {
-		int temp = board[from];
+	/* Attempt to move the players peice by 'move'. Return true if the move
+	   was valid and successfull, return false otherwise. */
+	public boolean move(Move move) {
+		return move(move.getFrom(), move.getTo());
+	}
 
-		if (board[from] == PLAYER_COLOR) {
-			if (isValidMove(this.board, from ,to)) {
-				board[to] = board[from];
-				board[from] = HexapawnConstants.EMPTY_SQUARE;
+	// As move(Move.of(from, to)).
+	public boolean move(int from, int to) {
+		if (from >= 0 && from < rules.getSquareCount() &&
+			HexapawnRules.get(board, from) == PLAYER_COLOR) {
+			if (rules.isValidMove(board, from ,to)) {
+				board = HexapawnRules.move(board, from, to);
+				moved(CPU_COLOR);
 				return true;
 			}
 		}
@@ -68,124 +198,64 @@ public class HexapawnEngine {
 	}
 
 	/* Test if the board is in a game completed state.  Returns true if the 
-	   game is over, return false if the game can continue. */
+	   game is over, return false if the game can continue.  A game where the
+	   side to move is left without a valid move ends with no winner. */
 	public boolean gameCompleted() {
-		boolean white = false;
-		boolean black = false;
-
-		// Game over if a color makes it to opposite end.
-		for (int i = 0 ; i < 3 ; i++) {
-			if (board[i] == HexapawnConstants.WHITE_SQUARE) {
-				winner = "You!";
-				return true;
-			}
-			if (board[6+i] == HexapawnConstants.BLACK_SQUARE) {
-				winner = "CPU";
-				return true;
-			}
-		}
-
-		// Game over if only one color present on board.
-		for (int space : board) {
-			if (space == HexapawnConstants.WHITE_SQUARE) white = true;
-			if (space == HexapawnConstants.BLACK_SQUARE) black = true;
-		}
-
-		if (black && !white) {
-			winner = "CPU";
-			return true;
-		} else if (!black && white) {
-			winner = "You!";
-			return true;
-		}
+		return outcome.isOver();
+	}
 
-		// Game over if there are no valid moves for peices on the board.
-		for (int i=0 ; i < 9 ; i++) {
-			if (board[i] == HexapawnConstants.WHITE_SQUARE) {
-				if ( isValidMove(board, i, i - 2) 
-					 || isValidMove(board, i, i-3)   
-					 || isValidMove(board, i, i-4) ) return false;
-			}else if (board[i] == HexapawnConstants.BLACK_SQUARE) {
-				if ( isValidMove(board, i, i + 2) 
-					 || isValidMove(board, i, i+3) 
-					 || isValidMove(board, i, i + 4)) return false;
-			}
-		}
+	/* Write every valid move for 'color' on the current board into 'moves'
+	   (encoded with HexapawnRules.encodeMove) and return how many were 
+	   written.  The moves are found in one pass over the pawns, and 'moves'
+	   can be reused between calls; it needs room for getMaxMoves() moves. */
+	public int generateMoves(int color, int[] moves) {
+		return rules.generateMoves(board, color, moves);
+	}
 
-		winner = "No winner!";
-		return true;
+	// Most valid moves one side can have on this engine's board.
+	public int getMaxMoves() {
+		return rules.getMaxMoves();
 	}
 
 	// Check if a move is valid under Hexapawn rules.
-	public static boolean isValidMove(int[] map, int i1, int i2) {
-		// Return false if either value is beyone range of board.
-		if (i1 > 8 || i1 < 0 || i2 > 8 || i2 < 0) return false;
-		return  (isLegal(map, i1, i2) && isAllowed(map, i1, i2));
-	}
-
-	// Move is allowed as long as it doesn't land on a square of its own color.
-	public static boolean isAllowed(int[] map, int i1, int i2) {
-		return !(map[i1] == map[i2]);
-	}
-
-	// Check move type is legal based on the color and current board state.
-	public static boolean isLegal(int[] map, int i1, int i2) {
-		int move_length = i1 - i2;
-		int abs_move_length = Math.abs(move_length);
-		
-		if (i1 != i2) {
-			if (abs_move_length <= 4 && abs_move_length >= 2) {
-				switch(map[i1]) {
-					case HexapawnConstants.WHITE_SQUARE: 
-						if (move_length > 0) {
-							/* Moves of length 3 are allowed by and white piece
-							   as long as i1 and i2 are in bounds of the board 
-							   and we are moving to an empty square */
-							if (move_length == 3 &&
-								map[i2] == HexapawnConstants.EMPTY_SQUARE) {
-								return true;
-							}
-
-							/* If the destination is a square of opposite color
-							   , we must move diagonally onto it.  These checks 
-							   make the move from i1 to i2 is valid and diagonal */
-							if (map[i2] == HexapawnConstants.BLACK_SQUARE) {
-								if (((i1 % 3) == 0) && (move_length == 2)) return true;
-								if (((i1 % 3) == 1) && (move_length == 2 || move_length == 4)) return true;
-								if (((i1 % 3) == 2) && (move_length == 4)) return true;
-							}
-						}
-					break;
-					case HexapawnConstants.BLACK_SQUARE:
-						// Similar but opposite logic to above.
-						if (move_length < 0) {
-							if (move_length == -3 && 
-								map[i2] == HexapawnConstants.EMPTY_SQUARE) {
-								return true;
-							}
-							if (map[i2] == HexapawnConstants.WHITE_SQUARE) {
-								if (((i1 % 3) == 0) && (move_length == -4)) return true;
-								if (((i1 % 3) == 1) && (move_length == -2 || move_length == -4)) return true;
-								if (((i1 % 3) == 2) && (move_length == -2)) return true;
-							}
-						}
-					break;
-				}
-			}
-		}
-		return false;
+	public boolean isValidMove(long board, int from, int to) {
+		return rules.isValidMove(board, from, to);
 	}
 
 	/* Get a move, decided by the HexapawnBrain based on previous games in the
-	   series. */
+	   series, or by the strategy if one is set. */
 	public void makeMove() {
-		board = brain.getMove(board);
+		if (strategy == null) {
+			board = brain.getMove(board);
+		} else {
+			board = HexapawnRules.move(board, strategy.chooseMove(board, CPU_COLOR));
+		}
+		moved(PLAYER_COLOR);
+	}
+
+	/* Work out whether the move just made ended the game, 'next' being the
+	   side due to move after it. */
+	private void moved(int next) {
+		outcome = Outcome.of(rules.outcomeAfterMove(board, next));
+		if (outcome.isOver()) result = outcome.getWinner();
 	}
 
-	/* Reset the engine as if the program just started */
+	/* Reset the engine as if the program just started with no saved brain,
+	   forgetting all learning (including any kept in the brain file) */
 	public void reset() {
-		brain = new HexapawnBrain();
+		brain = new HexapawnBrain(rules);
+		seedPriors();
+		if (journal != null) {
+			try {
+				journal.clear();
+			} catch (IOException e) {
+				journalError(e);
+			}
+		}
+		if (brain_file != null) saveSnapshot();
 		board = getDefaultBoard();
+		outcome = Outcome.ONGOING;
+		game_length = 0;
 		games_played = 0;
 		human_wins = 0;
 		cpu_wins = 0;
@@ -194,11 +264,26 @@ public class HexapawnEngine {
 	/* Allow the HexapawnBrain to learn from its learning buffer based on the
 	   outcome of the game */
 	public void learn(int winner) {
-		if (this.winner.equals("No winner!")) {
+		if (outcome == Outcome.DRAW) {
 			brain.learnFromBuffer();
 		} else {
 			brain.learnFromBuffer( winner );
 		}
+		if (strategy != null) strategy.gameOver(result);
+
+		if (journal != null) {
+			try {
+				journal.append(first_mover, result, game_moves, game_length);
+			} catch (IOException e) {
+				journalError(e);
+			}
+		}
+		game_length = 0;
+
+		if (brain_file != null && 
+				(journal == null || ++games_since_snapshot >= SNAPSHOT_INTERVAL)) {
+			saveSnapshot();
+		}
 	}
 
 	/* Used to prepare the engine for running another game in a series. 
@@ -206,16 +291,63 @@ public class HexapawnEngine {
 	   increment if the game was a tie.
 	   (does not reset HexapawnBrain or counts of any sort) */
 	public void refresh() {
+		if (result == PLAYER_COLOR) human_wins += 1;
+		if (result == CPU_COLOR) cpu_wins += 1;
+
 		board = getDefaultBoard(); 
+		outcome = Outcome.ONGOING;
+		game_length = 0;
 		games_played += 1;
+	}
+
+	// Record a move by 'player' from 'inp' to 'out' for the journal.
+	private void recordMove(long inp, long out, int player) {
+		int before, after;
+		if (player == HexapawnConstants.WHITE_SQUARE) {
+			before = HexapawnRules.white(inp);
+			after = HexapawnRules.white(out);
+		} else {
+			before = HexapawnRules.black(inp);
+			after = HexapawnRules.black(out);
+		}
+
+		if (game_length == 0) first_mover = player;
+		if (game_length == game_moves.length) {
+			game_moves = Arrays.copyOf(game_moves, game_length * 2);
+		}
+		game_moves[game_length++] = HexapawnRules.encodeMove(
+			Integer.numberOfTrailingZeros(before & ~after), 
+			Integer.numberOfTrailingZeros(after & ~before));
+	}
+
+	/* Save a snapshot of the brain, syncing the journal first so the 
+	   position recorded is on disk. */
+	private void saveSnapshot() {
+		if (journal != null) {
+			try {
+				journal.sync();
+			} catch (IOException e) {
+				// Saves a snapshot without the journal.
+				journalError(e);
+				return;
+			}
+		}
+		brain_file.saveAsync(brain, (journal == null) ? 0 : journal.getPosition());
+		games_since_snapshot = 0;
+	}
 
-		if (winner.equals("You!")) human_wins += 1;
-		if (winner.equals("CPU")) cpu_wins += 1;
+	/* Stop journalling after a failed write, the snapshots still keep the
+	   brain. */
+	private void journalError(IOException e) {
+		System.out.println("!!!! Error - could not write game journal, games will only " + 
+			"be kept in brain snapshots :: " + e.getMessage() + " !!!!");
+		journal = null;
+		if (brain_file != null) saveSnapshot();
 	}
 
 	/* Default setup for the board */
-	private int[] getDefaultBoard() {
-		return new int[]{2,2,2,0,0,0,1,1,1};
+	private long getDefaultBoard() {
+		return rules.getDefaultBoard();
 	}
 
 	
@@ -0,0 +1,74 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Histogram of non-negative values (e.g. latencies in nanoseconds) with a 
+   fixed relative precision over the whole range of a long, in the style of
+   HdrHistogram.  Values are counted in buckets that are exact below 
+   2^SUB_BUCKET_BITS, above that each power of two is split into 
+   2^(SUB_BUCKET_BITS - 1) equal buckets, so any value is known to within
+   about 3%.  Recording never allocates and is safe from any thread. */
+public class HexapawnHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int HALF = 1 << (SUB_BUCKET_BITS - 1);
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * HALF;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder(), sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long value) {
+		if (value < 0) value = 0;
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+
+		long seen;
+		while (value > (seen = max.get()) && !max.compareAndSet(seen, value));
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.sum();
+		return (n == 0) ? 0 : (double)sum.sum() / n;
+	}
+
+	/* Value at or below which 'percentile' percent of the recorded values 
+	   fall, to within the precision of the buckets. 0 if nothing has been
+	   recorded. */
+	public long getPercentile(double percentile) {
+		long n = count.sum();
+		if (n == 0) return 0;
+
+		long target = Math.max(1, (long)Math.ceil(n * percentile / 100));
+		long seen = 0;
+		for (int i = 0 ; i < BUCKETS ; i++) {
+			seen += counts.get(i);
+			if (seen >= target) return Math.min(highest(i), max.get());
+		}
+		return max.get();
+	}
+
+	// Bucket for 'value': the value itself if small, else its top bits.
+	private static int index(long value) {
+		int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+		return shift * HALF + (int)(value >>> shift);
+	}
+
+	// Highest value counted in bucket 'index'.
+	private static long highest(int index) {
+		int shift = (index < 2 * HALF) ? 0 : index / HALF - 1;
+		long base = index - shift * HALF;
+		return ((base + 1) << shift) - 1;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,247 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/* Append-only record of every game a brain learned from, so the games played
+   since the last brain snapshot (see HexapawnBrainFile) are not lost if the
+   program stops without saving.
+
+   The journal starts with a magic number and format version, followed by one
+   record per game: the number of moves, the color of the side that moved
+   first, the winner (EMPTY_SQUARE for a draw), then the from and to square
+   of each move, one byte each.  Games always start from the default board,
+   so the moves are enough to replay them.
+
+   Records are collected in a buffer and written and synced to disk once
+   every 'syncInterval' games, so at most that many games are lost if the
+   machine goes down.  Positions in the journal are byte offsets, and the
+   snapshot of a brain records the position of the first game it has not 
+   learned from.  The journal is synced before a snapshot takes its 
+   position, so the position is never past the end of the file on disk. */
+public class HexapawnJournal {
+
+	// "HXPJ"
+	private static final int MAGIC = 0x4858504A;
+	private static final int VERSION = 1;
+	public static final int HEADER_BYTES = 2 * 4;
+
+	// Games between syncs when none is given.
+	public static final int DEFAULT_SYNC_INTERVAL = 256;
+	private static final int BUFFER_BYTES = 1 << 16;
+	// Bytes before the moves in a record.
+	private static final int RECORD_HEADER_BYTES = 3;
+	// Games replayed into each batch learned by the brain.
+	private static final int REPLAY_BATCH_GAMES = 1 << 16;
+
+	private final String path;
+	private final HexapawnRules rules;
+	private final int syncInterval;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+	// Position after the last game appended, whether written yet or not.
+	private long position;
+	private int unsynced;
+
+	/* Open the journal in the file 'path' for games played by 'rules',
+	   creating it if it does not exist. */
+	public HexapawnJournal(String path, HexapawnRules rules, int syncInterval) throws IOException {
+		this.path = path;
+		this.rules = rules;
+		this.syncInterval = syncInterval;
+		this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+			StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try {
+			if (channel.size() == 0) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+				header.putInt(MAGIC).putInt(VERSION).flip();
+				channel.write(header, 0);
+				channel.force(false);
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+				while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+				header.flip();
+				if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+					throw new IOException(path + " is not a Hexapawn journal");
+				}
+				int version = header.getInt();
+				if (version != VERSION) {
+					throw new IOException(path + " has unsupported version " + version);
+				}
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		position = channel.size();
+	}
+
+	/* Journal kept alongside the brain snapshot in 'brainPath', e.g. 
+	   hexapawn-3x3.journal for hexapawn-3x3.brain. */
+	public static String pathFor(String brainPath) {
+		String base = brainPath.endsWith(".brain") ? 
+			brainPath.substring(0, brainPath.length() - ".brain".length()) : brainPath;
+		return base + ".journal";
+	}
+
+	// Position after the last game appended.
+	public synchronized long getPosition() {
+		return position;
+	}
+
+	/* Append a game of 'count' moves (encoded with HexapawnRules.encodeMove),
+	   the first played by 'firstMover', that ended with 'winner' winning 
+	   (EMPTY_SQUARE for a draw). */
+	public synchronized void append(int firstMover, int winner, int[] moves, int count) 
+			throws IOException {
+		int bytes = RECORD_HEADER_BYTES + 2 * count;
+		if (buffer.remaining() < bytes) write();
+
+		buffer.put((byte)count);
+		buffer.put((byte)firstMover);
+		buffer.put((byte)winner);
+		for (int i = 0 ; i < count ; i++) {
+			buffer.put((byte)HexapawnRules.moveFrom(moves[i]));
+			buffer.put((byte)HexapawnRules.moveTo(moves[i]));
+		}
+		position += bytes;
+
+		if (++unsynced >= syncInterval) sync();
+	}
+
+	/* Teach 'brain' every game in the journal from 'from' on, as if each was
+	   learned from as it finished.  Returns the number of games replayed.
+	   Games are learned in batches (see HexapawnLearningBatch), so a move 
+	   played in many games is only learned once per batch.
+
+	   A record cut short (the program stopped while writing it) or one that
+	   does not hold a valid game ends the replay, and the journal is cut 
+	   back to the last good record so new games follow straight on.  Any 
+	   games appended but not yet written are written first.  If 'from' is
+	   past the end of the journal nothing is replayed; the snapshot that
+	   recorded it must be replaced (see isBehind). */
+	public synchronized int replay(HexapawnBrain brain, long from) throws IOException {
+		write();
+		long size = channel.size();
+		if (from > size) {
+			System.out.println("!!!! Warning - journal " + path + " ends before the brain " + 
+				"snapshot's position, games since the last sync are lost !!!!");
+		}
+		from = Math.min(Math.max(from, HEADER_BYTES), size);
+
+		ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		long[] boards = new long[256];
+		long good = from, read = from;
+		int games = 0;
+		HexapawnLearningBatch batch = new HexapawnLearningBatch(rules);
+
+		in.flip();
+		while (true) {
+			if (in.remaining() < RECORD_HEADER_BYTES || 
+					in.remaining() < RECORD_HEADER_BYTES + 2 * (in.get(in.position()) & 0xFF)) {
+				in.compact();
+				int n = channel.read(in, read);
+				in.flip();
+				if (n <= 0) break;
+				read += n;
+				continue;
+			}
+
+			int count = in.get() & 0xFF, player = in.get(), winner = in.get();
+			if (!decode(in, count, player, winner, boards)) break;
+
+			batch.addGame(boards, count + 1, player, winner);
+			if (batch.getGameCount() == REPLAY_BATCH_GAMES) {
+				brain.learnBatch(batch);
+				batch.clear();
+			}
+			good += RECORD_HEADER_BYTES + 2 * count;
+			games += 1;
+		}
+		brain.learnBatch(batch);
+
+		if (good < size) {
+			System.out.println("!!!! Warning - discarding damaged end of journal " + path + " !!!!");
+			channel.truncate(good);
+			channel.force(false);
+		}
+		position = Math.max(good, HEADER_BYTES);
+		return games;
+	}
+
+	/* True if a snapshot recording the position 'from' is ahead of the end
+	   of the journal, as after a crash before the games it had counted 
+	   were synced. */
+	public synchronized boolean isBehind(long from) throws IOException {
+		write();
+		return from > channel.size();
+	}
+
+	// Forget every game in the journal.
+	public synchronized void clear() throws IOException {
+		buffer.clear();
+		channel.truncate(HEADER_BYTES);
+		channel.force(false);
+		position = HEADER_BYTES;
+		unsynced = 0;
+	}
+
+	// Write any games not yet written and sync them to disk.
+	public synchronized void sync() throws IOException {
+		write();
+		channel.force(false);
+		unsynced = 0;
+	}
+
+	public synchronized void close() throws IOException {
+		if (!channel.isOpen()) return;
+		sync();
+		channel.close();
+	}
+
+	private void write() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position - buffer.remaining());
+		}
+		buffer.clear();
+	}
+
+	/* Read the moves of a record into 'boards' as the board before each 
+	   move followed by the final board, checking every move is valid. */
+	private boolean decode(ByteBuffer in, int count, int player, int winner, long[] boards) {
+		if (player != HexapawnConstants.WHITE_SQUARE && player != HexapawnConstants.BLACK_SQUARE) {
+			in.position(in.position() + 2 * count);
+			return false;
+		}
+
+		boolean valid = winner == HexapawnConstants.EMPTY_SQUARE || 
+			winner == HexapawnConstants.WHITE_SQUARE || winner == HexapawnConstants.BLACK_SQUARE;
+		long board = rules.getDefaultBoard();
+		boards[0] = board;
+
+		for (int i = 0 ; i < count ; i++) {
+			int from = in.get() & 0xFF, to = in.get() & 0xFF;
+			if (!valid) continue;
+
+			if (from >= rules.getSquareCount() || HexapawnRules.get(board, from) != player ||
+					!rules.isValidMove(board, from, to)) {
+				valid = false;
+				continue;
+			}
+			board = HexapawnRules.move(board, from, to);
+			boards[i + 1] = board;
+			player = opponent(player);
+		}
+		return valid;
+	}
+
+	private static int opponent(int color) {
+		return (color == HexapawnConstants.WHITE_SQUARE) ?
+			HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+package engine;
+
+import java.util.Arrays;
+
+/* Moves from many finished games, collected to be learned by a brain in one
+   pass (see HexapawnBrain.learnBatch).  Moves are stored the way the brain
+   remembers them, from black's side and under the canonical one of a board
+   and its mirror image, and every move seen more than once is kept once
+   with the sum of its weights.  Learning a batch gives a brain the same 
+   counts as learning each game in turn would, see HexapawnBrain.learnBatch
+   for how it differs.
+
+   Not thread safe, each thread collecting games needs its own batch. */
+public class HexapawnLearningBatch {
+
+	// Starting size of the table of moves, must be a power of two.
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final HexapawnRules rules;
+	// Open addressing table of moves, a weight of 0 marks an empty slot.
+	private long[] inputs, outputs;
+	private int[] weights;
+	private int size, games;
+
+	public HexapawnLearningBatch(HexapawnRules rules) {
+		this.rules = rules;
+		clear();
+	}
+
+	public HexapawnRules getRules() {
+		return rules;
+	}
+
+	// Number of games added since the batch was last cleared.
+	public int getGameCount() {
+		return games;
+	}
+
+	// Number of different moves in the batch.
+	public int getMoveCount() {
+		return size;
+	}
+
+	/* Add a finished game: 'boards' holds the board before each move 
+	   followed by the final board, 'firstMover' is the color of the side 
+	   that moved first and 'winner' the winner (EMPTY_SQUARE for a draw).
+	   A draw teaches every move and a win teaches the winner's moves, as 
+	   HexapawnBrain.learnFromBuffer does. */
+	public void addGame(long[] boards, int firstMover, int winner) {
+		addGame(boards, boards.length, firstMover, winner);
+	}
+
+	// As addGame(boards, firstMover, winner), using the first 'length' boards.
+	public void addGame(long[] boards, int length, int firstMover, int winner) {
+		int player = firstMover;
+		for (int i = 0 ; i + 1 < length ; i++) {
+			if (winner == HexapawnConstants.EMPTY_SQUARE) {
+				addMove(boards[i], boards[i + 1], player, false);
+			} else if (player == winner) {
+				addMove(boards[i], boards[i + 1], player, true);
+			}
+			player = (player == HexapawnConstants.WHITE_SQUARE) ? 
+				HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE;
+		}
+		games += 1;
+	}
+
+	/* Add one move by 'player' from 'input' to 'output', weighted as part of
+	   a winning game or a draw as HexapawnBrain.addState does. */
+	public void addMove(long input, long output, int player, boolean isWinner) {
+		input = rules.asBlack(input, player);
+		output = rules.asBlack(output, player);
+		add(rules.canonical(input), rules.canonicalOutput(input, output), isWinner ? 3 : 2);
+	}
+
+	// Empty the batch, keeping the room it has grown to.
+	public void clear() {
+		if (weights == null) {
+			inputs = new long[INITIAL_CAPACITY];
+			outputs = new long[INITIAL_CAPACITY];
+			weights = new int[INITIAL_CAPACITY];
+		} else {
+			Arrays.fill(weights, 0);
+		}
+		size = 0;
+		games = 0;
+	}
+
+	// Size of the table of moves, slots are numbered 0 to this less one.
+	int capacity() {
+		return weights.length;
+	}
+
+	// Weight of the move in 'slot', 0 if the slot is empty.
+	int weight(int slot) {
+		return weights[slot];
+	}
+
+	// Canonical input board of the move in 'slot'.
+	long input(int slot) {
+		return inputs[slot];
+	}
+
+	long output(int slot) {
+		return outputs[slot];
+	}
+
+	private void add(long input, long output, int weight) {
+		int mask = weights.length - 1;
+		int slot = HexapawnRules.hash(input, output) & mask;
+
+		for ( ; weights[slot] != 0 ; slot = (slot + 1) & mask) {
+			if (inputs[slot] == input && outputs[slot] == output) {
+				weights[slot] += weight;
+				return;
+			}
+		}
+
+		// Keep the table at most half full so probes stay short.
+		if (2 * (size + 1) > weights.length) {
+			grow();
+			add(input, output, weight);
+			return;
+		}
+		inputs[slot] = input;
+		outputs[slot] = output;
+		weights[slot] = weight;
+		size += 1;
+	}
+
+	private void grow() {
+		long[] oldInputs = inputs, oldOutputs = outputs;
+		int[] oldWeights = weights;
+		inputs = new long[oldInputs.length * 2];
+		outputs = new long[oldOutputs.length * 2];
+		weights = new int[oldWeights.length * 2];
+
+		int mask = weights.length - 1;
+		for (int i = 0 ; i < oldWeights.length ; i++) {
+			if (oldWeights[i] == 0) continue;
+
+			int slot = HexapawnRules.hash(oldInputs[i], oldOutputs[i]) & mask;
+			while (weights[slot] != 0) slot = (slot + 1) & mask;
+			inputs[slot] = oldInputs[i];
+			outputs[slot] = oldOutputs[i];
+			weights[slot] = oldWeights[i];
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,339 @@
+package engine;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/* Strategy which picks its moves by Monte Carlo tree search.  Until its time
+   budget or playout limit runs out, it walks down a tree of positions
+   choosing moves by UCT (upper confidence bound applied to trees), adds the
+   first position off the tree, plays the rest of the game out with random
+   moves, and counts the result in every position on the way down.  The most
+   visited move is played.  Unlike the brain it looks ahead, and unlike
+   minimax it needs no evaluation of unfinished positions.
+
+   The part of the tree below the move played is kept for the next move of
+   the same game, so playouts are not thrown away.  Given a brain with
+   setPriors, the moves it has learned are tried first and favoured while
+   they have few visits.  With setThreads each thread grows a tree of its own
+   from the same position and their visits are added up to choose the move,
+   which plays the same for a given seed and playout limit whatever the
+   timing of the threads. */
+public class HexapawnMctsStrategy implements MoveStrategy {
+
+	// Default time allowed per move.
+	public static final long DEFAULT_BUDGET_NANOS = 20000000L;
+
+	// Weight of exploring little visited moves against playing well scored ones.
+	private static final double EXPLORATION = 1.4;
+	// Weight of the brain's prior for a move, shrinking as the move is visited.
+	private static final double PRIOR_WEIGHT = 1.0;
+	// Check the clock once every this many playouts.
+	private static final int CHECK_INTERVAL = 64;
+
+	private HexapawnRules rules;
+	private SplittableRandom rand;
+	private long budgetNanos;
+	private int playoutLimit = Integer.MAX_VALUE;
+	// Brain whose learned moves seed the priors of new positions, null for none.
+	private HexapawnBrain priors;
+	// One searcher per thread, the first runs on the caller's thread.
+	private Searcher[] searchers;
+	private ExecutorService pool;
+
+	public HexapawnMctsStrategy(HexapawnRules rules) {
+		this(rules, new SplittableRandom(), DEFAULT_BUDGET_NANOS);
+	}
+
+	// Create a strategy whose playouts are reproducible for a given seed.
+	public HexapawnMctsStrategy(HexapawnRules rules, long seed) {
+		this(rules, new SplittableRandom(seed), DEFAULT_BUDGET_NANOS);
+	}
+
+	public HexapawnMctsStrategy(HexapawnRules rules, SplittableRandom rand, long budgetNanos) {
+		this.rules = rules;
+		this.rand = rand;
+		this.budgetNanos = budgetNanos;
+		this.searchers = new Searcher[] { new Searcher(rand) };
+	}
+
+	/* Stop searching a move after 'playouts' playouts even if there is time
+	   left.  Together with a budget of Long.MAX_VALUE this makes the moves
+	   played depend only on the seed, not on the speed of the machine. */
+	public void setPlayoutLimit(int playouts) {
+		if (playouts < 1) throw new IllegalArgumentException("Playout limit must be at least 1");
+		this.playoutLimit = playouts;
+	}
+
+	/* Seed the priors of positions from the moves 'brain' has learned, null
+	   to search without priors.  Only positions added to the tree from now
+	   on are seeded. */
+	public void setPriors(HexapawnBrain brain) {
+		this.priors = brain;
+	}
+
+	/* Search with 'threads' threads, sharing the playout limit between them.
+	   Forgets the tree kept from earlier moves. */
+	public void setThreads(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("Threads must be at least 1");
+		if (pool != null) pool.shutdown();
+
+		searchers = new Searcher[threads];
+		searchers[0] = new Searcher(rand);
+		for (int i = 1 ; i < threads ; i++) searchers[i] = new Searcher(rand.split());
+
+		pool = (threads == 1) ? null : Executors.newFixedThreadPool(threads - 1,
+			new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "hexapawn-mcts");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	}
+
+	public int chooseMove(long board, int color) {
+		long start = System.nanoTime();
+		int threads = searchers.length;
+
+		Future<?>[] helpers = new Future<?>[threads - 1];
+		for (int i = 1 ; i < threads ; i++) {
+			Searcher searcher = searchers[i];
+			int share = share(i);
+			helpers[i - 1] = pool.submit(() -> searcher.search(board, color, start, share));
+		}
+		searchers[0].search(board, color, start, share(0));
+
+		try {
+			for (Future<?> helper : helpers) helper.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while searching", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Search thread failed", e.getCause());
+		}
+
+		/* Every tree expanded the root from the same board, so its moves are
+		   in the same order in each and their visits can be added up. */
+		Node[] children = searchers[0].root.children;
+		int best = 0, bestVisits = -1;
+		for (int i = 0 ; i < children.length ; i++) {
+			int visits = 0;
+			for (Searcher searcher : searchers) visits += searcher.root.children[i].visits;
+			if (visits > bestVisits) {
+				bestVisits = visits;
+				best = i;
+			}
+		}
+
+		int move = children[best].move;
+		for (Searcher searcher : searchers) searcher.root = searcher.root.children[best];
+		return move;
+	}
+
+	public void gameOver(int winner) {
+		for (Searcher searcher : searchers) searcher.root = null;
+	}
+
+	// The playouts searcher 'i' makes, the limit shared as evenly as possible.
+	private int share(int i) {
+		int threads = searchers.length;
+		return Math.max(1, playoutLimit / threads + ((i < playoutLimit % threads) ? 1 : 0));
+	}
+
+	private static int opponent(int color) {
+		return (color == HexapawnConstants.WHITE_SQUARE) ?
+			HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE;
+	}
+
+	/* A tree searched by a single thread, with the random numbers and
+	   buffers it needs.  'root' is the position last searched from, or the
+	   position after the move played from it. */
+	private class Searcher {
+
+		private SplittableRandom rand;
+		private Node root;
+		// Reused to hold the valid moves, and the positions walked through, during playouts.
+		private int[] moves;
+		private Node[] path;
+		// Reused to hold the brain's replies to a board when seeding priors.
+		private long[] replies;
+		private int[] totals;
+
+		Searcher(SplittableRandom rand) {
+			this.rand = rand;
+			this.moves = new int[rules.getMaxMoves()];
+			// Every move advances a pawn, so no game lasts more than a move per square per side.
+			this.path = new Node[2 * rules.getSquareCount() + 1];
+			this.replies = new long[rules.getMaxMoves()];
+			this.totals = new int[rules.getMaxMoves()];
+		}
+
+		/* Make up to 'playouts' playouts from 'board' with 'color' to move,
+		   stopping early once the time budget since 'start' is spent. */
+		void search(long board, int color, long start, int playouts) {
+			root = reuse(board, color);
+			if (root.children == null) expand(root);
+
+			int done = 0;
+			do {
+				int batch = Math.min(CHECK_INTERVAL, playouts - done);
+				for (int i = 0 ; i < batch ; i++) playout();
+				done += batch;
+			} while (done < playouts && System.nanoTime() - start < budgetNanos);
+		}
+
+		/* The position for 'board' in the tree kept from the last move, or a
+		   new one if the game has gone somewhere the tree did not reach. */
+		private Node reuse(long board, int color) {
+			if (root != null) {
+				if (root.board == board && root.toMove == color) return root;
+				if (root.children != null) {
+					for (Node child : root.children) {
+						if (child.board == board && child.toMove == color) return child;
+					}
+				}
+			}
+			return new Node(board, color, -1);
+		}
+
+		/* Walk down from the root to a position not yet expanded, expand it,
+		   play a random game from there and count the result on the way
+		   back. */
+		private void playout() {
+			int depth = 0;
+			Node node = root;
+			path[depth++] = node;
+
+			while (node.children != null && node.children.length > 0) {
+				node = node.select();
+				path[depth++] = node;
+			}
+
+			int result = node.result(rules);
+			if (result == HexapawnRules.ONGOING) {
+				expand(node);
+				node = node.select();
+				path[depth++] = node;
+				result = node.result(rules);
+				if (result == HexapawnRules.ONGOING) result = rollout(node.board, node.toMove);
+			}
+
+			for (int i = 0 ; i < depth ; i++) path[i].update(result);
+		}
+
+		/* Play random moves from the unfinished 'board' until the game is
+		   over, returning the winner.  Only the side that just moved can have
+		   won, so each move only needs the moves of the side to play
+		   generated and the mover's pawns checked. */
+		private int rollout(long board, int toMove) {
+			while (true) {
+				int count = rules.generateMoves(board, toMove, moves);
+				if (count == 0) return HexapawnConstants.EMPTY_SQUARE;
+
+				board = HexapawnRules.move(board, moves[rand.nextInt(count)]);
+				if (rules.hasWon(board, toMove)) return toMove;
+				toMove = opponent(toMove);
+			}
+		}
+
+		private void expand(Node node) {
+			int count = rules.generateMoves(node.board, node.toMove, moves);
+			node.children = new Node[count];
+			for (int i = 0 ; i < count ; i++) {
+				node.children[i] = new Node(HexapawnRules.move(node.board, moves[i]),
+					opponent(node.toMove), moves[i]);
+			}
+			if (priors != null) seedPriors(node);
+		}
+
+		/* Give each child of 'node' the share of the brain's memories from
+		   'node' that chose it.  The brain plays black, so white's boards are
+		   flipped before asking it.  On a board that is its own mirror image 
+		   the brain keeps a move and its mirror image as one memory, so both
+		   children get its share. */
+		private void seedPriors(Node node) {
+			boolean black = node.toMove == HexapawnConstants.BLACK_SQUARE;
+			long input = black ? node.board : rules.flip(node.board);
+			int known = priors.replies(input, replies, totals, 0, replies.length);
+			if (known == 0 || totals[known - 1] == 0) return;
+
+			boolean symmetric = rules.mirror(input) == input;
+			double total = totals[known - 1];
+			for (Node child : node.children) {
+				long output = black ? child.board : rules.flip(child.board);
+				long mirrored = symmetric ? rules.mirror(output) : output;
+				for (int i = 0 ; i < known ; i++) {
+					if (replies[i] == output || replies[i] == mirrored) {
+						child.prior = (totals[i] - ((i == 0) ? 0 : totals[i - 1])) / total;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/* A position in the search tree, reached by 'move', with 'toMove' due to
+	   move.  'score' totals the results of playouts through it for the side
+	   that made 'move': 1 for a win and a half for a draw.  'prior' is the
+	   share of the brain's memories that chose 'move', 0 without a brain. */
+	private static class Node {
+
+		final long board;
+		final int toMove, move;
+		Node[] children;
+		int visits;
+		double score, prior;
+		// Result of the game at this position, unknown until asked for.
+		private int result = Integer.MIN_VALUE;
+
+		Node(long board, int toMove, int move) {
+			this.board = board;
+			this.toMove = toMove;
+			this.move = move;
+		}
+
+		int result(HexapawnRules rules) {
+			if (result == Integer.MIN_VALUE) result = rules.outcome(board, toMove);
+			return result;
+		}
+
+		/* The child with the highest upper confidence bound plus its share
+		   of the prior.  Unvisited children come first, the one with the
+		   highest prior first of all. */
+		Node select() {
+			double logVisits = Math.log(visits);
+			Node best = null, unvisited = null;
+			double bestBound = Double.NEGATIVE_INFINITY;
+
+			for (Node child : children) {
+				if (child.visits == 0) {
+					if (unvisited == null || child.prior > unvisited.prior) unvisited = child;
+					continue;
+				}
+
+				double bound = child.score / child.visits +
+					EXPLORATION * Math.sqrt(logVisits / child.visits) +
+					PRIOR_WEIGHT * child.prior / (child.visits + 1);
+				if (bound > bestBound) {
+					bestBound = bound;
+					best = child;
+				}
+			}
+			return (unvisited != null) ? unvisited : best;
+		}
+
+		void update(int winner) {
+			visits += 1;
+			if (winner == HexapawnConstants.EMPTY_SQUARE) {
+				score += 0.5;
+			} else if (winner != toMove) {
+				// The side that moved here won.
+				score += 1;
+			}
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/* Counters and latency histograms for the moves chosen and the games learned
+   by every HexapawnBrain in the process.
+
+   Metrics are off until enable() is called.  While they are off the only 
+   cost to a brain is reading one field to find there is nothing to record 
+   to, so the clock is not even read.  Once enabled they are published over
+   JMX (see HexapawnMetricsMXBean) and, if asked for, printed as a summary 
+   line at a fixed interval. */
+public class HexapawnMetrics implements HexapawnMetricsMXBean {
+
+	private static final String OBJECT_NAME = "engine:type=HexapawnMetrics";
+
+	// The enabled metrics, null while metrics are off.
+	private static volatile HexapawnMetrics active;
+
+	private final LongAdder smartMoves = new LongAdder();
+	private final LongAdder randomMoves = new LongAdder();
+	private final LongAdder fallbackMoves = new LongAdder();
+	private final HexapawnHistogram moveNanos = new HexapawnHistogram();
+	private final HexapawnHistogram learnNanos = new HexapawnHistogram();
+	// Size of the brain that last learned.
+	private volatile int positions, entries, totalMemories;
+	private ScheduledExecutorService dumper;
+
+	private HexapawnMetrics() {
+	}
+
+	// The enabled metrics, null if metrics are off.
+	public static HexapawnMetrics active() {
+		return active;
+	}
+
+	/* Turn metrics on (if they are not already) and return them.  If 
+	   'dumpSeconds' is above 0 a summary is printed every 'dumpSeconds'
+	   seconds. */
+	public static synchronized HexapawnMetrics enable(long dumpSeconds) {
+		if (active != null) return active;
+
+		HexapawnMetrics metrics = new HexapawnMetrics();
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(metrics, new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			System.out.println("!!!! Error - could not register metrics MBean :: " + 
+				e.getMessage() + " !!!!");
+		}
+
+		if (dumpSeconds > 0) {
+			metrics.dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "hexapawn-metrics");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			final HexapawnMetrics dumped = metrics;
+			metrics.dumper.scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					System.out.println(dumped.getSummary());
+				}
+			}, dumpSeconds, dumpSeconds, TimeUnit.SECONDS);
+		}
+
+		active = metrics;
+		return metrics;
+	}
+
+	// Turn metrics off, dropping everything recorded.
+	public static synchronized void disable() {
+		if (active == null) return;
+
+		if (active.dumper != null) active.dumper.shutdown();
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+		} catch (JMException e) {
+			// Registering failed in the first place.
+		}
+		active = null;
+	}
+
+	void smartMove() {
+		smartMoves.increment();
+	}
+
+	void randomMove() {
+		randomMoves.increment();
+	}
+
+	void fallbackMove() {
+		fallbackMoves.increment();
+	}
+
+	void recordMove(long nanos) {
+		moveNanos.record(nanos);
+	}
+
+	// Record a call to learnFromBuffer taking 'nanos' that left 'brain' as it is.
+	void recordLearn(long nanos, HexapawnBrain brain) {
+		recordLearn(nanos, brain.getPositionCount(), brain.getEntryCount(), 
+			brain.getTotalMemories());
+	}
+
+	/* Record learning from a game taking 'nanos', that left the brain with 
+	   the given number of positions, entries and memories. */
+	void recordLearn(long nanos, int positions, int entries, int totalMemories) {
+		learnNanos.record(nanos);
+		this.positions = positions;
+		this.entries = entries;
+		this.totalMemories = totalMemories;
+	}
+
+	public HexapawnHistogram getMoveLatency() {
+		return moveNanos;
+	}
+
+	public HexapawnHistogram getLearnLatency() {
+		return learnNanos;
+	}
+
+	public long getSmartMoves() {
+		return smartMoves.sum();
+	}
+
+	public long getRandomMoves() {
+		return randomMoves.sum();
+	}
+
+	public long getFallbackMoves() {
+		return fallbackMoves.sum();
+	}
+
+	public long getMoveLatencyMean() {
+		return Math.round(moveNanos.getMean());
+	}
+
+	public long getMoveLatency50th() {
+		return moveNanos.getPercentile(50);
+	}
+
+	public long getMoveLatency99th() {
+		return moveNanos.getPercentile(99);
+	}
+
+	public long getMoveLatencyMax() {
+		return moveNanos.getMax();
+	}
+
+	public long getLearnCount() {
+		return learnNanos.getCount();
+	}
+
+	public long getLearnLatencyMean() {
+		return Math.round(learnNanos.getMean());
+	}
+
+	public long getLearnLatency99th() {
+		return learnNanos.getPercentile(99);
+	}
+
+	public int getBrainPositions() {
+		return positions;
+	}
+
+	public int getBrainEntries() {
+		return entries;
+	}
+
+	public int getBrainTotalMemories() {
+		return totalMemories;
+	}
+
+	public String getSummary() {
+		return String.format("Metrics: moves %d smart / %d random / %d fallback, " +
+			"move p50 %dns p99 %dns max %dns, %d learns p99 %dns, " + 
+			"brain %d positions / %d entries / %d memories",
+			getSmartMoves(), getRandomMoves(), getFallbackMoves(), 
+			getMoveLatency50th(), getMoveLatency99th(), getMoveLatencyMax(), 
+			getLearnCount(), getLearnLatency99th(), 
+			positions, entries, totalMemories);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,41 @@
+package engine;
+
+/* Management interface of HexapawnMetrics, registered with the platform 
+   MBean server as engine:type=HexapawnMetrics.  Latencies are in 
+   nanoseconds. */
+public interface HexapawnMetricsMXBean {
+
+	// Moves chosen from the brain's memories.
+	long getSmartMoves();
+
+	// Moves chosen at random by a brain with no memories at all.
+	long getRandomMoves();
+
+	// Moves chosen at random because the brain had no memory of the board.
+	long getFallbackMoves();
+
+	long getMoveLatencyMean();
+
+	long getMoveLatency50th();
+
+	long getMoveLatency99th();
+
+	long getMoveLatencyMax();
+
+	// Calls to learnFromBuffer.
+	long getLearnCount();
+
+	long getLearnLatencyMean();
+
+	long getLearnLatency99th();
+
+	// Size of the brain that last learned.
+	int getBrainPositions();
+
+	int getBrainEntries();
+
+	int getBrainTotalMemories();
+
+	// One line summary, as printed by the periodic dump.
+	String getSummary();
+}
\ No newline at end of file
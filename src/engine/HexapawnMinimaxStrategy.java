@@ -0,0 +1,37 @@
+package engine;
+
+import java.util.Random;
+
+/* Strategy which picks its moves with a HexapawnSearch (alpha-beta).  On the
+   standard board the search reaches the end of the game well within the
+   budget, so this plays perfectly; on larger boards it plays the best move
+   it can find in the time allowed.  Ties between equally good moves are
+   broken at random so a learning opponent sees some variety. */
+public class HexapawnMinimaxStrategy implements MoveStrategy {
+
+	// Default time allowed per move.
+	public static final long DEFAULT_BUDGET_NANOS = 20000000L;
+
+	private HexapawnSearch search;
+	private long budgetNanos;
+
+	public HexapawnMinimaxStrategy(HexapawnRules rules) {
+		this(rules, new Random(), DEFAULT_BUDGET_NANOS);
+	}
+
+	// Create a strategy whose choices are reproducible for a given seed.
+	public HexapawnMinimaxStrategy(HexapawnRules rules, long seed) {
+		this(rules, new Random(seed), DEFAULT_BUDGET_NANOS);
+	}
+
+	public HexapawnMinimaxStrategy(HexapawnRules rules, Random rand, long budgetNanos) {
+		this.search = new HexapawnSearch(rules, HexapawnSearch.DEFAULT_TABLE_BITS, rand);
+		this.budgetNanos = budgetNanos;
+	}
+
+	public int chooseMove(long board, int color) {
+		return search.bestMove(board, color, budgetNanos, Integer.MAX_VALUE);
+	}
+
+	public void gameOver(int winner) {}
+}
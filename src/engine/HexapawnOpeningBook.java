@@ -0,0 +1,209 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/* Replies a HexapawnBrain has learned for the boards the CPU can face in the
+   first few plies of a game, kept ready to pick from.  Every game starts on
+   the same board, so the same handful of positions are asked for again and
+   again; the book answers them from a small table keyed by the board as it
+   is, without finding the canonical board or probing the brain's index.
+
+   Each board has its outputs (already facing the same way as the board) and
+   the running totals of their counts, exactly as the brain holds them, so a
+   reply picked from the book is the one the brain would have picked with the
+   same random number.  The brain marks boards stale when learning changes
+   their memories, and the book copies them again from the brain before its
+   next use. */
+final class HexapawnOpeningBook {
+
+	// Plies from the start of a game covered by default.
+	static final int DEFAULT_PLIES = 4;
+
+	// Open addressing table from each board in the book to its entry, -1 if empty.
+	private final long[] boards;
+	private final int[] slots;
+	/* Open addressing table from each canonical board to the first of the
+	   entries it covers, chained through 'nextSame'. */
+	private final long[] canonicals;
+	private final int[] firsts;
+	private final int mask;
+
+	// Board of each entry, and its block of replies in 'outputs' and 'cumulative'.
+	private final long[] entryBoards;
+	private final int[] starts, sizes, nextSame;
+	private final long[] outputs;
+	private final int[] cumulative;
+	private final boolean[] stale;
+	private int staleCount;
+
+	// Book for every board the CPU (black) can be to move on in the first 'plies' plies.
+	HexapawnOpeningBook(HexapawnRules rules, int plies) {
+		long[] found = openings(rules, plies);
+		int count = found.length;
+
+		int capacity = 16;
+		while (capacity < 2 * count) capacity *= 2;
+		mask = capacity - 1;
+		boards = new long[capacity];
+		slots = new int[capacity];
+		canonicals = new long[capacity];
+		firsts = new int[capacity];
+		Arrays.fill(slots, -1);
+		Arrays.fill(firsts, -1);
+
+		entryBoards = found;
+		starts = new int[count];
+		sizes = new int[count];
+		nextSame = new int[count];
+		stale = new boolean[count];
+
+		int[] moves = new int[rules.getMaxMoves()];
+		int total = 0;
+		for (int entry = 0 ; entry < count ; entry++) {
+			long board = found[entry];
+			starts[entry] = total;
+			total += rules.generateMoves(board, HexapawnConstants.BLACK_SQUARE, moves);
+
+			int slot = HexapawnRules.hash(board) & mask;
+			while (slots[slot] >= 0) slot = (slot + 1) & mask;
+			boards[slot] = board;
+			slots[slot] = entry;
+
+			long canonical = rules.canonical(board);
+			slot = HexapawnRules.hash(canonical) & mask;
+			while (firsts[slot] >= 0 && canonicals[slot] != canonical) slot = (slot + 1) & mask;
+			canonicals[slot] = canonical;
+			nextSame[entry] = firsts[slot];
+			firsts[slot] = entry;
+		}
+		outputs = new long[total];
+		cumulative = new int[total];
+		invalidateAll();
+	}
+
+	private HexapawnOpeningBook(HexapawnOpeningBook book) {
+		boards = book.boards;
+		slots = book.slots;
+		canonicals = book.canonicals;
+		firsts = book.firsts;
+		mask = book.mask;
+		entryBoards = book.entryBoards;
+		starts = book.starts;
+		nextSame = book.nextSame;
+		sizes = book.sizes.clone();
+		outputs = book.outputs.clone();
+		cumulative = book.cumulative.clone();
+		stale = book.stale.clone();
+		staleCount = book.staleCount;
+	}
+
+	/* Copy of the book to go with a copy of its brain.  The tables that never
+	   change are shared. */
+	HexapawnOpeningBook copy() {
+		return new HexapawnOpeningBook(this);
+	}
+
+	// Entry of 'board', -1 if it is not in the book.
+	int find(long board) {
+		for (int slot = HexapawnRules.hash(board) & mask ; slots[slot] >= 0 ; slot = (slot + 1) & mask) {
+			if (boards[slot] == board) return slots[slot];
+		}
+		return -1;
+	}
+
+	// Number of replies the brain has learned for 'entry'.
+	int size(int entry) {
+		return sizes[entry];
+	}
+
+	/* Pick a reply for 'entry' with probability proportional to its count,
+	   in the same way as the brain does. */
+	long pick(int entry, SplittableRandom rand) {
+		int low = starts[entry], high = low + sizes[entry] - 1;
+		long target = rand.nextLong(cumulative[high]);
+
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulative[middle] > target) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return outputs[low];
+	}
+
+	// Mark the boards whose memories are kept under 'canonical' as changed.
+	void invalidate(long canonical) {
+		for (int slot = HexapawnRules.hash(canonical) & mask ; firsts[slot] >= 0 ; slot = (slot + 1) & mask) {
+			if (canonicals[slot] != canonical) continue;
+
+			for (int entry = firsts[slot] ; entry >= 0 ; entry = nextSame[entry]) {
+				if (!stale[entry]) {
+					stale[entry] = true;
+					staleCount += 1;
+				}
+			}
+			return;
+		}
+	}
+
+	void invalidateAll() {
+		Arrays.fill(stale, true);
+		staleCount = stale.length;
+	}
+
+	boolean isStale() {
+		return staleCount > 0;
+	}
+
+	// Copy the replies of every changed board from 'brain'.
+	void refresh(HexapawnBrain brain) {
+		for (int entry = 0 ; entry < stale.length && staleCount > 0 ; entry++) {
+			if (!stale[entry]) continue;
+
+			int end = (entry + 1 < starts.length) ? starts[entry + 1] : outputs.length;
+			sizes[entry] = brain.replies(entryBoards[entry], outputs, cumulative, 
+				starts[entry], end - starts[entry]);
+			stale[entry] = false;
+			staleCount -= 1;
+		}
+	}
+
+	/* Every board the CPU can be to move on, with the game still going, in
+	   the first 'plies' plies of a game whoever moves first. */
+	private static long[] openings(HexapawnRules rules, int plies) {
+		Set<Long> found = new LinkedHashSet<Long>();
+		Set<Long> white = Collections.singleton(rules.getDefaultBoard());
+		Set<Long> black = white;
+		int[] moves = new int[rules.getMaxMoves()];
+
+		for (int ply = 0 ; ply < plies ; ply++) {
+			Set<Long> nextWhite = new LinkedHashSet<Long>(), nextBlack = new LinkedHashSet<Long>();
+			for (long board : black) {
+				if (rules.outcome(board, HexapawnConstants.BLACK_SQUARE) != HexapawnRules.ONGOING) continue;
+
+				found.add(board);
+				int count = rules.generateMoves(board, HexapawnConstants.BLACK_SQUARE, moves);
+				for (int i = 0 ; i < count ; i++) nextWhite.add(HexapawnRules.move(board, moves[i]));
+			}
+			for (long board : white) {
+				if (rules.outcome(board, HexapawnConstants.WHITE_SQUARE) != HexapawnRules.ONGOING) continue;
+
+				int count = rules.generateMoves(board, HexapawnConstants.WHITE_SQUARE, moves);
+				for (int i = 0 ; i < count ; i++) nextBlack.add(HexapawnRules.move(board, moves[i]));
+			}
+			white = nextWhite;
+			black = nextBlack;
+		}
+
+		long[] boards = new long[found.size()];
+		int count = 0;
+		for (long board : found) boards[count++] = board;
+		return boards;
+	}
+}
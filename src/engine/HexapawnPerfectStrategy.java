@@ -0,0 +1,14 @@
+package engine;
+
+/* Strategy which plays the solved best move in every position, looked up in
+   the HexapawnSolver tables.  Useful as a fixed benchmark: no strategy can
+   get a better result against it than the game-theoretic value.  Only plays
+   on the standard 3x3 board. */
+public class HexapawnPerfectStrategy implements MoveStrategy {
+
+	public int chooseMove(long board, int color) {
+		return HexapawnSolver.bestMove(board, color);
+	}
+
+	public void gameOver(int winner) {}
+}
@@ -0,0 +1,34 @@
+package engine;
+
+import java.util.Random;
+
+/* Strategy which picks uniformly between all valid moves. */
+public class HexapawnRandomStrategy implements MoveStrategy {
+
+	private HexapawnRules rules;
+	private Random rand;
+	// Reused between calls to hold the valid moves on the current board.
+	private int[] moves;
+
+	public HexapawnRandomStrategy(HexapawnRules rules) {
+		this(rules, new Random());
+	}
+
+	// Create a strategy whose choices are reproducible for a given seed.
+	public HexapawnRandomStrategy(HexapawnRules rules, long seed) {
+		this(rules, new Random(seed));
+	}
+
+	private HexapawnRandomStrategy(HexapawnRules rules, Random rand) {
+		this.rules = rules;
+		this.rand = rand;
+		this.moves = new int[rules.getMaxMoves()];
+	}
+
+	public int chooseMove(long board, int color) {
+		int count = rules.generateMoves(board, color, moves);
+		return moves[rand.nextInt(count)];
+	}
+
+	public void gameOver(int winner) {}
+}
@@ -0,0 +1,348 @@
+package engine;
+
+/* Rules of Hexapawn on a board 'width' squares wide and 'height' squares 
+   tall, and the packed representation of such a board.
+   
+   A board is a single long holding two masks, white pawns in the low 32 bits
+   and black pawns in the high 32 bits.  Bit i of a mask corresponds to 
+   square i of the int[] board, so squares are numbered starting with 0 in 
+   the top left, moving across each row, and ending with the bottom right.
+   Boards of up to 32 squares are supported.  Black starts along the top row
+   and moves down, white starts along the bottom row and moves up. */
+public final class HexapawnRules {
+
+	public static final int MAX_SQUARES = 32;
+
+	// The classic 3x3 game.
+	public static final HexapawnRules STANDARD = new HexapawnRules(
+		HexapawnConstants.BOARD_SIDE_LENGTH, HexapawnConstants.BOARD_SIDE_LENGTH);
+
+	// Returned by outcome() while the game can continue.
+	public static final int ONGOING = -1;
+
+	private final int width, height, squares;
+	// Mask covering every square of one color.
+	private final int full;
+	// Squares in the left and right columns, and the top and bottom rows.
+	private final int leftColumn, rightColumn, topRow, bottomRow;
+	// Squares in each column, from left to right.
+	private final int[] columns;
+	private final long defaultBoard;
+
+	public HexapawnRules(int width, int height) {
+		if (width < 1 || height < 3 || width * height > MAX_SQUARES) {
+			throw new IllegalArgumentException("Unsupported board size " + 
+				width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+		this.squares = width * height;
+		this.full = (int)((1L << squares) - 1);
+
+		this.columns = new int[width];
+		for (int row = 0 ; row < height ; row++) {
+			for (int column = 0 ; column < width ; column++) {
+				columns[column] |= 1 << (row * width + column);
+			}
+		}
+		this.leftColumn = columns[0];
+		this.rightColumn = columns[width - 1];
+		this.topRow = (1 << width) - 1;
+		this.bottomRow = topRow << (squares - width);
+
+		// Black pawns along the top row, white pawns along the bottom row.
+		this.defaultBoard = pack(bottomRow, topRow);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getSquareCount() {
+		return squares;
+	}
+
+	public long getDefaultBoard() {
+		return defaultBoard;
+	}
+
+	// Upper bound on the number of valid moves for one side on any board.
+	public int getMaxMoves() {
+		return 3 * squares;
+	}
+
+	// Mask of the squares in row 'row' (row 0 is the top row).
+	public int rowMask(int row) {
+		return topRow << (row * width);
+	}
+
+	public static int white(long board) {
+		return (int)board;
+	}
+
+	public static int black(long board) {
+		return (int)(board >>> 32);
+	}
+
+	public int empty(long board) {
+		return ~(white(board) | black(board)) & full;
+	}
+
+	// Build a packed board from its white and black masks.
+	public static long pack(int white, int black) {
+		return (white & 0xFFFFFFFFL) | ((long)black << 32);
+	}
+
+	// Get the HexapawnConstants value of the square at 'index'.
+	public static int get(long board, int index) {
+		if (((white(board) >>> index) & 1) != 0) return HexapawnConstants.WHITE_SQUARE;
+		if (((black(board) >>> index) & 1) != 0) return HexapawnConstants.BLACK_SQUARE;
+		return HexapawnConstants.EMPTY_SQUARE;
+	}
+
+	// Convert an int[] board (one HexapawnConstants value per square) to a packed board.
+	public long fromArray(int[] board) {
+		int white = 0, black = 0;
+
+		for (int i = 0 ; i < squares ; i++) {
+			if (board[i] == HexapawnConstants.WHITE_SQUARE) white |= 1 << i;
+			if (board[i] == HexapawnConstants.BLACK_SQUARE) black |= 1 << i;
+		}
+		return pack(white, black);
+	}
+
+	// Expand a packed board into the int[] form used by the GUI.
+	public int[] toArray(long board) {
+		int[] squares = new int[this.squares];
+
+		for (int i = 0 ; i < this.squares ; i++) {
+			squares[i] = get(board, i);
+		}
+		return squares;
+	}
+
+	/* Mask of squares the pawns in 'pawns' (all of the color 'color') can
+	   move to.  Pawns move straight ahead onto an empty square or diagonally
+	   ahead onto a square held by the opposite color. */
+	public int targets(long board, int pawns, int color) {
+		int empty = empty(board);
+
+		if (color == HexapawnConstants.WHITE_SQUARE) {
+			int black = black(board);
+			return ((pawns >>> width) & empty)
+				| (((pawns & ~leftColumn) >>> (width + 1)) & black)
+				| (((pawns & ~rightColumn) >>> (width - 1)) & black);
+		} else {
+			int white = white(board);
+			return ((pawns << width) & empty)
+				| (((pawns & ~rightColumn) << (width + 1)) & white)
+				| (((pawns & ~leftColumn) << (width - 1)) & white);
+		}
+	}
+
+	// True if any pawn of 'color' has a move available.
+	public boolean hasMoves(long board, int color) {
+		int pawns = (color == HexapawnConstants.WHITE_SQUARE) ? white(board) : black(board);
+		return targets(board, pawns, color) != 0;
+	}
+
+	// Check if a move is valid under Hexapawn rules.
+	public boolean isValidMove(long board, int from, int to) {
+		// Return false if either value is beyone range of board.
+		if (from >= squares || from < 0 || to >= squares || to < 0) return false;
+
+		int color = get(board, from);
+		if (color == HexapawnConstants.EMPTY_SQUARE) return false;
+
+		return ((targets(board, 1 << from, color) >>> to) & 1) != 0;
+	}
+
+	/* Write every valid move for the pawns of 'color' into 'moves' (encoded
+	   with encodeMove) and return how many were written.  'moves' must have
+	   room for getMaxMoves() moves. */
+	public int generateMoves(long board, int color, int[] moves) {
+		int pawns = (color == HexapawnConstants.WHITE_SQUARE) ? white(board) : black(board);
+		int count = 0;
+
+		while (pawns != 0) {
+			int from = Integer.numberOfTrailingZeros(pawns);
+			int targets = targets(board, 1 << from, color);
+
+			while (targets != 0) {
+				int to = Integer.numberOfTrailingZeros(targets);
+				moves[count++] = encodeMove(from, to);
+				targets &= targets - 1;
+			}
+			pawns &= pawns - 1;
+		}
+		return count;
+	}
+
+	// Pack a move from square 'from' to square 'to' into a single int.
+	public static int encodeMove(int from, int to) {
+		return (from << 8) | to;
+	}
+
+	public static int moveFrom(int move) {
+		return move >>> 8;
+	}
+
+	public static int moveTo(int move) {
+		return move & 0xFF;
+	}
+
+	/* Move the pawn on 'from' to 'to', capturing anything on 'to'.  Does not
+	   check the move is valid. */
+	public static long move(long board, int from, int to) {
+		int white = white(board), black = black(board);
+		int fromBit = 1 << from, toBit = 1 << to;
+
+		if ((white & fromBit) != 0) {
+			white = (white & ~fromBit) | toBit;
+			black &= ~toBit;
+		} else {
+			black = (black & ~fromBit) | toBit;
+			white &= ~toBit;
+		}
+		return pack(white, black);
+	}
+
+	// Apply a move encoded with encodeMove.
+	public static long move(long board, int move) {
+		return move(board, moveFrom(move), moveTo(move));
+	}
+
+	/* Rotate the board 180 degrees and flip all white pawns to black and vice
+	   versa.  Used to view a white move as if black had played it. */
+	public long flip(long board) {
+		return pack(reverse(black(board)), reverse(white(board)));
+	}
+
+	/* Reflect the board left to right.  The rules are the same on both sides
+	   of the board, so a position and its mirror image play identically. */
+	public long mirror(long board) {
+		return pack(mirror(white(board)), mirror(black(board)));
+	}
+
+	/* 'board' as the brains see it after a move by 'player': flipped to 
+	   black's side if white moved, since brains learn every move as if the
+	   CPU (black) had made it. */
+	public long asBlack(long board, int player) {
+		return (player == HexapawnConstants.WHITE_SQUARE) ? flip(board) : board;
+	}
+
+	/* The lower of 'board' and its mirror image.  Brains remember the moves
+	   from a board under this one, so a position and its mirror image share
+	   their memories. */
+	public long canonical(long board) {
+		return Math.min(board, mirror(board));
+	}
+
+	/* The board 'output' reached from 'input' as remembered under 
+	   canonical(input): mirrored if the input is, and on a board that is its
+	   own mirror image the lower of the output and its mirror image, since
+	   a move and its mirror image are then the same move. */
+	public long canonicalOutput(long input, long output) {
+		long mirrored = mirror(input);
+		if (mirrored < input) return mirror(output);
+		if (mirrored == input) return Math.min(output, mirror(output));
+		return output;
+	}
+
+	// Hash of a packed board for the open addressing tables of the brains.
+	public static int hash(long board) {
+		long z = board * 0x9E3779B97F4A7C15L;
+		return (int)(z ^ (z >>> 32));
+	}
+
+	// Hash of a move from the packed board 'input' to 'output'.
+	public static int hash(long input, long output) {
+		long z = (input * 0x9E3779B97F4A7C15L) ^ (output * 0xC2B2AE3D27D4EB4FL);
+		return (int)(z ^ (z >>> 32));
+	}
+
+	private int mirror(int mask) {
+		int mirrored = 0;
+
+		for (int column = 0 ; column < width ; column++) {
+			int shift = width - 1 - 2 * column;
+			int squares = mask & columns[column];
+			mirrored |= (shift >= 0) ? squares << shift : squares >>> -shift;
+		}
+		return mirrored;
+	}
+
+	// Reverse the order of the squares in a mask (square i becomes squares - 1 - i).
+	private int reverse(int mask) {
+		return Integer.reverse(mask) >>> (Integer.SIZE - squares);
+	}
+
+	// True if a white pawn has reached the top row.
+	public boolean whiteHome(long board) {
+		return (white(board) & topRow) != 0;
+	}
+
+	// True if a black pawn has reached the bottom row.
+	public boolean blackHome(long board) {
+		return (black(board) & bottomRow) != 0;
+	}
+
+	/* Get the result of the game on 'board' when 'toMove' is the color due to
+	   move next.  Returns the color of the winner, EMPTY_SQUARE for a draw
+	   (the side to move is blocked), or ONGOING if the game can continue. */
+	public int outcome(long board, int toMove) {
+		// Game over if a color makes it to opposite end.
+		if (whiteHome(board)) return HexapawnConstants.WHITE_SQUARE;
+		if (blackHome(board)) return HexapawnConstants.BLACK_SQUARE;
+
+		// Game over if only one color present on board.
+		if (white(board) == 0) return HexapawnConstants.BLACK_SQUARE;
+		if (black(board) == 0) return HexapawnConstants.WHITE_SQUARE;
+
+		// Game over if the side to move has no valid moves.
+		if (!hasMoves(board, toMove)) return HexapawnConstants.EMPTY_SQUARE;
+
+		return ONGOING;
+	}
+
+	/* True if 'color' has won on 'board', by reaching the far row or taking
+	   every pawn of the other side. */
+	public boolean hasWon(long board, int color) {
+		if (color == HexapawnConstants.WHITE_SQUARE) {
+			return whiteHome(board) || black(board) == 0;
+		} else {
+			return blackHome(board) || white(board) == 0;
+		}
+	}
+
+	/* As outcome(board, next) for the board just after the other color 
+	   moved, in a game that was going on before the move.  Only the side
+	   that moved can have won, so this needs one check of its pawns and 
+	   one of the moves open to 'next'. */
+	public int outcomeAfterMove(long board, int next) {
+		int mover = (next == HexapawnConstants.WHITE_SQUARE) ? 
+			HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE;
+
+		if (hasWon(board, mover)) return mover;
+		if (!hasMoves(board, next)) return HexapawnConstants.EMPTY_SQUARE;
+		return ONGOING;
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof HexapawnRules)) return false;
+		HexapawnRules rules = (HexapawnRules)other;
+		return rules.width == width && rules.height == height;
+	}
+
+	public int hashCode() {
+		return width * 31 + height;
+	}
+
+	public String toString() {
+		return width + "x" + height;
+	}
+}
\ No newline at end of file
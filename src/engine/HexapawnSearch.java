@@ -0,0 +1,275 @@
+package engine;
+
+import java.util.Random;
+
+/* Alpha-beta search for boards of any size, used where a full solution of the
+   game (see HexapawnSolver) is out of reach.  The search deepens one ply at a
+   time until its time budget runs out, the game tree is exhausted, or a
+   forced result is found, and answers with the best move of the deepest
+   completed iteration.  Results are cached in a transposition table with a
+   fixed number of entries, so memory use does not grow with the board.
+
+   Not thread safe, each thread searching needs its own HexapawnSearch. */
+public class HexapawnSearch {
+
+	// Default transposition table size, as a power of two.
+	public static final int DEFAULT_TABLE_BITS = 18;
+
+	/* Score of a won position, less one per ply to the win.  Scores beyond
+	   WIN_THRESHOLD are forced results rather than heuristic estimates. */
+	public static final int WIN_SCORE = 100000;
+	private static final int WIN_THRESHOLD = WIN_SCORE - 1000;
+	private static final int INFINITY = WIN_SCORE + 1;
+
+	// Kinds of transposition table entry.
+	private static final byte EXACT = 1;
+	private static final byte LOWER_BOUND = 2;
+	private static final byte UPPER_BOUND = 3;
+
+	// Check the clock once every this many nodes (must be a power of two).
+	private static final int CHECK_INTERVAL = 1024;
+
+	private final HexapawnRules rules;
+	private final int[] rowMasks;
+	private final Random rand;
+
+	// Transposition table, one slot per index in each array.
+	private final long[] keys;
+	private final int[] scores, bestMoves;
+	private final byte[] depths, kinds;
+	private final int tableMask;
+
+	// Reusable move lists, one per ply.
+	private int[][] moves = new int[0][];
+
+	private long deadline, nodes;
+	private boolean aborted;
+	private int lastScore, lastDepth;
+
+	public HexapawnSearch(HexapawnRules rules) {
+		this(rules, DEFAULT_TABLE_BITS, null);
+	}
+
+	/* Create a search with a transposition table of 2^tableBits entries.  If
+	   'rand' is not null, moves at the root are tried in random order, so the
+	   choice between equally good moves varies from call to call. */
+	public HexapawnSearch(HexapawnRules rules, int tableBits, Random rand) {
+		this.rules = rules;
+		this.rand = rand;
+		this.rowMasks = new int[rules.getHeight()];
+		for (int row = 0 ; row < rowMasks.length ; row++) {
+			rowMasks[row] = rules.rowMask(row);
+		}
+
+		int size = 1 << tableBits;
+		keys = new long[size];
+		scores = new int[size];
+		bestMoves = new int[size];
+		depths = new byte[size];
+		kinds = new byte[size];
+		tableMask = size - 1;
+	}
+
+	// Score of the last search, for the side the move was chosen for.
+	public int getLastScore() {
+		return lastScore;
+	}
+
+	// Depth of the deepest iteration the last search completed.
+	public int getLastDepth() {
+		return lastDepth;
+	}
+
+	/* Find the best move for 'toMove' on 'board', encoded with
+	   HexapawnRules.encodeMove, spending roughly 'budgetNanos' and searching
+	   at most 'maxDepth' plies.  The first iteration always completes,
+	   however small the budget.  Returns -1 if 'toMove' has no valid move. */
+	public int bestMove(long board, int toMove, long budgetNanos, int maxDepth) {
+		int[] root = new int[rules.getMaxMoves()];
+		int count = rules.generateMoves(board, toMove, root);
+		if (count == 0) return -1;
+
+		if (rand != null) {
+			for (int i = count - 1 ; i > 0 ; i--) {
+				swap(root, i, rand.nextInt(i + 1));
+			}
+		}
+
+		// Every move advances a pawn one row, so no game lasts longer than this.
+		int horizon = Math.min(maxDepth, remainingPlies(board));
+		int best = root[0];
+
+		deadline = Long.MAX_VALUE;
+		aborted = false;
+		lastDepth = 0;
+
+		for (int depth = 1 ; depth <= Math.max(1, horizon) ; depth++) {
+			int bestIndex = -1, alpha = -INFINITY;
+
+			for (int i = 0 ; i < count ; i++) {
+				int score = -negamax(HexapawnRules.move(board, root[i]),
+					opponent(toMove), depth - 1, -INFINITY, -alpha, 1);
+				if (aborted) break;
+
+				if (score > alpha) {
+					alpha = score;
+					bestIndex = i;
+				}
+			}
+			if (aborted) break;
+
+			// Search the best move first in the next iteration.
+			for (int i = bestIndex ; i > 0 ; i--) swap(root, i, i - 1);
+			best = root[0];
+			lastScore = alpha;
+			lastDepth = depth;
+
+			if (Math.abs(alpha) >= WIN_THRESHOLD) break;
+			if (depth == 1) deadline = System.nanoTime() + budgetNanos;
+		}
+		return best;
+	}
+
+	private int negamax(long board, int toMove, int depth, int alpha, int beta, int ply) {
+		if ((++nodes & (CHECK_INTERVAL - 1)) == 0 && System.nanoTime() > deadline) {
+			aborted = true;
+			return 0;
+		}
+
+		int result = rules.outcome(board, toMove);
+		if (result != HexapawnRules.ONGOING) {
+			if (result == HexapawnConstants.EMPTY_SQUARE) return 0;
+			return (result == toMove) ? WIN_SCORE - ply : -(WIN_SCORE - ply);
+		}
+		if (depth == 0) return evaluate(board, toMove);
+
+		int slot = slot(board, toMove);
+		int tableMove = -1;
+		if (keys[slot] == key(board, toMove)) {
+			tableMove = bestMoves[slot];
+			if (depths[slot] >= depth) {
+				int score = fromTable(scores[slot], ply);
+				if (kinds[slot] == EXACT) return score;
+				if (kinds[slot] == LOWER_BOUND && score >= beta) return score;
+				if (kinds[slot] == UPPER_BOUND && score <= alpha) return score;
+			}
+		}
+
+		if (moves.length <= ply) grow(ply);
+		int[] list = moves[ply];
+		int count = rules.generateMoves(board, toMove, list);
+
+		// Try the move the table remembers as best first.
+		for (int i = 1 ; i < count ; i++) {
+			if (list[i] == tableMove) {
+				swap(list, i, 0);
+				break;
+			}
+		}
+
+		int originalAlpha = alpha, best = -INFINITY, bestMove = list[0];
+		for (int i = 0 ; i < count ; i++) {
+			int score = -negamax(HexapawnRules.move(board, list[i]),
+				opponent(toMove), depth - 1, -beta, -alpha, ply + 1);
+			if (aborted) return 0;
+
+			if (score > best) {
+				best = score;
+				bestMove = list[i];
+			}
+			if (score > alpha) alpha = score;
+			if (alpha >= beta) break;
+		}
+
+		byte kind = (best <= originalAlpha) ? UPPER_BOUND :
+			(best >= beta) ? LOWER_BOUND : EXACT;
+		store(slot, board, toMove, depth, toTable(best, ply), kind, bestMove);
+		return best;
+	}
+
+	/* Heuristic score of a position for 'toMove': material counts most,
+	   then how far pawns have advanced towards the far row. */
+	private int evaluate(long board, int toMove) {
+		int white = HexapawnRules.white(board), black = HexapawnRules.black(board);
+		int last = rowMasks.length - 1;
+		int score = 100 * (Integer.bitCount(white) - Integer.bitCount(black));
+
+		for (int row = 0 ; row <= last ; row++) {
+			score += (last - row) * Integer.bitCount(white & rowMasks[row]);
+			score -= row * Integer.bitCount(black & rowMasks[row]);
+		}
+		return (toMove == HexapawnConstants.WHITE_SQUARE) ? score : -score;
+	}
+
+	// Most plies the game on 'board' can still last.
+	private int remainingPlies(long board) {
+		int white = HexapawnRules.white(board), black = HexapawnRules.black(board);
+		int last = rowMasks.length - 1, plies = 0;
+
+		for (int row = 0 ; row <= last ; row++) {
+			plies += row * Integer.bitCount(white & rowMasks[row]);
+			plies += (last - row) * Integer.bitCount(black & rowMasks[row]);
+		}
+		return plies;
+	}
+
+	/* Forced results are stored relative to the position rather than the
+	   root, so they stay correct when the position is reached at another
+	   ply. */
+	private static int toTable(int score, int ply) {
+		if (score >= WIN_THRESHOLD) return score + ply;
+		if (score <= -WIN_THRESHOLD) return score - ply;
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score >= WIN_THRESHOLD) return score - ply;
+		if (score <= -WIN_THRESHOLD) return score + ply;
+		return score;
+	}
+
+	/* Store an entry, keeping the existing one only if it is for the same
+	   position and was searched deeper. */
+	private void store(int slot, long board, int toMove, int depth, int score,
+			byte kind, int move) {
+		long key = key(board, toMove);
+		if (keys[slot] == key && depths[slot] > depth) return;
+
+		keys[slot] = key;
+		scores[slot] = score;
+		depths[slot] = (byte)depth;
+		kinds[slot] = kind;
+		bestMoves[slot] = move;
+	}
+
+	/* Table key for a position.  A board never has every square occupied,
+	   so its complement (used for black to move) always has some bit set in
+	   both masks and can not be mistaken for a real white-to-move board. */
+	private static long key(long board, int toMove) {
+		return (toMove == HexapawnConstants.WHITE_SQUARE) ? board : ~board;
+	}
+
+	private int slot(long board, int toMove) {
+		return HexapawnRules.hash(key(board, toMove)) & tableMask;
+	}
+
+	private void grow(int ply) {
+		int[][] grown = new int[ply + 1][];
+		System.arraycopy(moves, 0, grown, 0, moves.length);
+		for (int i = moves.length ; i <= ply ; i++) {
+			grown[i] = new int[rules.getMaxMoves()];
+		}
+		moves = grown;
+	}
+
+	private static int opponent(int color) {
+		return (color == HexapawnConstants.WHITE_SQUARE) ?
+			HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE;
+	}
+
+	private static void swap(int[] array, int i, int j) {
+		int temp = array[i];
+		array[i] = array[j];
+		array[j] = temp;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+package engine;
+
+import java.util.Arrays;
+
+/* Game-theoretic solution of standard 3x3 Hexapawn.  Every position 
+   reachable from the default board (with either side moving first) is 
+   solved once, when the class is loaded, with a memoized minimax search. 
+   The score and a best move for each position are kept in flat arrays 
+   indexed by position, so answering a query is a table lookup.
+
+   Scores are from the point of view of the side to move.  A won position
+   scores MAX_SCORE less the number of plies to the win, a lost position the
+   negation of that, and a drawn position 0.  Best moves therefore win as 
+   quickly and lose as slowly as possible. */
+public final class HexapawnSolver {
+
+	// Game-theoretic values returned by value().
+	public static final int WIN = 1;
+	public static final int DRAW = 0;
+	public static final int LOSS = -1;
+
+	private static final int MAX_SCORE = 100;
+	// Marks positions which are not reachable from the default board.
+	private static final byte UNSOLVED = Byte.MIN_VALUE;
+	// Number of distinct boards, each square being empty, white or black.
+	private static final int BOARDS = 19683;
+
+	private static final HexapawnRules RULES = HexapawnRules.STANDARD;
+	// Base-3 value of every 9-bit mask, with square i worth 3^i.
+	private static final short[] BASE3 = new short[1 << RULES.getSquareCount()];
+	// Score and best move (-1 when the game is over) of every position.
+	private static final byte[] scores = new byte[2 * BOARDS];
+	private static final int[] bestMoves = new int[2 * BOARDS];
+	private static int positions;
+
+	static {
+		for (int mask = 1 ; mask < BASE3.length ; mask++) {
+			int low = Integer.numberOfTrailingZeros(mask);
+			BASE3[mask] = (short)(BASE3[mask & (mask - 1)] + pow3(low));
+		}
+		Arrays.fill(scores, UNSOLVED);
+		solve(RULES.getDefaultBoard(), HexapawnConstants.WHITE_SQUARE);
+		solve(RULES.getDefaultBoard(), HexapawnConstants.BLACK_SQUARE);
+	}
+
+	private HexapawnSolver() {}
+
+	// Number of positions reachable from the default board.
+	public static int getPositionCount() {
+		return positions;
+	}
+
+	/* Value of 'board' for 'toMove' under perfect play by both sides: WIN, 
+	   DRAW or LOSS. */
+	public static int value(long board, int toMove) {
+		return Integer.signum(score(board, toMove));
+	}
+
+	/* Score of 'board' for 'toMove', see the class comment for its meaning.
+	   Throws IllegalArgumentException for positions that can not come up in
+	   a game started from the default 3x3 board. */
+	public static int score(long board, int toMove) {
+		if (((HexapawnRules.white(board) | HexapawnRules.black(board)) & 
+			~(BASE3.length - 1)) != 0) {
+			throw new IllegalArgumentException("Position is not on a 3x3 board");
+		}
+
+		byte score = scores[index(board, toMove)];
+		if (score == UNSOLVED) {
+			throw new IllegalArgumentException("Position not reachable from the default board");
+		}
+		return score;
+	}
+
+	/* Best move for 'toMove' on 'board', encoded with 
+	   HexapawnRules.encodeMove.  Returns -1 if the game is already over. */
+	public static int bestMove(long board, int toMove) {
+		score(board, toMove);
+		return bestMoves[index(board, toMove)];
+	}
+
+	// Index of a position in the solution tables.
+	private static int index(long board, int toMove) {
+		int index = BASE3[HexapawnRules.white(board)] + 
+			2 * BASE3[HexapawnRules.black(board)];
+		return (toMove == HexapawnConstants.WHITE_SQUARE) ? index : BOARDS + index;
+	}
+
+	// Solve the position and everything reachable from it, returning its score.
+	private static int solve(long board, int toMove) {
+		int index = index(board, toMove);
+		if (scores[index] != UNSOLVED) return scores[index];
+
+		int result = RULES.outcome(board, toMove);
+		int best, bestMove = -1;
+
+		if (result == HexapawnRules.ONGOING) {
+			int[] moves = new int[RULES.getMaxMoves()];
+			int count = RULES.generateMoves(board, toMove, moves);
+			int opponent = (toMove == HexapawnConstants.WHITE_SQUARE) ? 
+				HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE;
+			best = -MAX_SCORE - 1;
+
+			for (int i = 0 ; i < count ; i++) {
+				long next = HexapawnRules.move(board, moves[i]);
+				// One ply further from the result than the reply.
+				int score = -solve(next, opponent);
+				score -= Integer.signum(score);
+
+				if (score > best) {
+					best = score;
+					bestMove = moves[i];
+				}
+			}
+		} else if (result == HexapawnConstants.EMPTY_SQUARE) {
+			best = 0;
+		} else {
+			best = (result == toMove) ? MAX_SCORE : -MAX_SCORE;
+		}
+
+		scores[index] = (byte)best;
+		bestMoves[index] = bestMove;
+		positions += 1;
+		return best;
+	}
+
+	private static int pow3(int exponent) {
+		int result = 1;
+		for (int i = 0 ; i < exponent ; i++) result *= 3;
+		return result;
+	}
+}
\ No newline at end of file
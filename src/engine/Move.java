@@ -0,0 +1,58 @@
+package engine;
+
+/* A move of a pawn from the square 'from' to the square 'to', numbered as 
+   in HexapawnRules.  Moves are immutable and shared: Move.of returns the 
+   same instance every time for the same squares, so handing moves around
+   allocates nothing and they can be compared with ==. */
+public final class Move {
+
+	private static final Move[] MOVES = 
+		new Move[HexapawnRules.MAX_SQUARES * HexapawnRules.MAX_SQUARES];
+
+	static {
+		for (int from = 0 ; from < HexapawnRules.MAX_SQUARES ; from++) {
+			for (int to = 0 ; to < HexapawnRules.MAX_SQUARES ; to++) {
+				MOVES[from * HexapawnRules.MAX_SQUARES + to] = new Move(from, to);
+			}
+		}
+	}
+
+	private final int from, to;
+
+	private Move(int from, int to) {
+		this.from = from;
+		this.to = to;
+	}
+
+	/* The move from 'from' to 'to'.  Throws IllegalArgumentException if
+	   either square is off every supported board. */
+	public static Move of(int from, int to) {
+		if (from < 0 || from >= HexapawnRules.MAX_SQUARES || 
+				to < 0 || to >= HexapawnRules.MAX_SQUARES) {
+			throw new IllegalArgumentException("No such move: " + from + "-" + to);
+		}
+		return MOVES[from * HexapawnRules.MAX_SQUARES + to];
+	}
+
+	// The move encoded as an int by HexapawnRules.encodeMove.
+	public static Move decode(int move) {
+		return of(HexapawnRules.moveFrom(move), HexapawnRules.moveTo(move));
+	}
+
+	public int getFrom() {
+		return from;
+	}
+
+	public int getTo() {
+		return to;
+	}
+
+	// Encode the move as an int, as HexapawnRules.encodeMove.
+	public int encode() {
+		return HexapawnRules.encodeMove(from, to);
+	}
+
+	public String toString() {
+		return from + "-" + to;
+	}
+}
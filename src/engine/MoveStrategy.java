@@ -0,0 +1,18 @@
+package engine;
+
+/* A way of choosing moves for either side of the board.  The CPU's moves in
+   a HexapawnEngine come from a strategy chosen at runtime (by default its
+   learning brain), so a deployment can trade the time taken per move
+   against how well the CPU plays.  Strategies also stand in for a human
+   when training or comparing players without the GUI. */
+public interface MoveStrategy {
+
+	/* Choose a move for 'color' on the packed board 'board'.  Returns the
+	   move encoded with HexapawnRules.encodeMove. 'color' is guaranteed to
+	   have at least one valid move. */
+	public int chooseMove(long board, int color);
+
+	/* Called once a game is over with the color of the winner, or
+	   EMPTY_SQUARE if there was no winner. */
+	public void gameOver(int winner);
+}
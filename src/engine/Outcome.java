@@ -0,0 +1,42 @@
+package engine;
+
+/* The state of a game of Hexapawn: still being played, won by one of the
+   colors, or drawn because the side to move is blocked. */
+public enum Outcome {
+
+	ONGOING(HexapawnRules.ONGOING),
+	WHITE_WINS(HexapawnConstants.WHITE_SQUARE),
+	BLACK_WINS(HexapawnConstants.BLACK_SQUARE),
+	DRAW(HexapawnConstants.EMPTY_SQUARE);
+
+	private final int winner;
+
+	private Outcome(int winner) {
+		this.winner = winner;
+	}
+
+	/* The Outcome for a result as returned by HexapawnRules.outcome: the 
+	   color of the winner, EMPTY_SQUARE for a draw or ONGOING. */
+	public static Outcome of(int result) {
+		switch (result) {
+			case HexapawnConstants.WHITE_SQUARE:
+				return WHITE_WINS;
+			case HexapawnConstants.BLACK_SQUARE:
+				return BLACK_WINS;
+			case HexapawnConstants.EMPTY_SQUARE:
+				return DRAW;
+			default:
+				return ONGOING;
+		}
+	}
+
+	public boolean isOver() {
+		return this != ONGOING;
+	}
+
+	/* Color of the winner, EMPTY_SQUARE for a draw, or HexapawnRules.ONGOING
+	   if the game is not over. */
+	public int getWinner() {
+		return winner;
+	}
+}
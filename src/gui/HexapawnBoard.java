@@ -1,6 +1,9 @@
 package gui;
 
+import engine.BoardView;
 import engine.HexapawnConstants;
+import engine.HexapawnRules;
+import engine.Move;
 
 import java.awt.Color;
 import java.awt.GridLayout;
@@ -17,15 +20,16 @@ import javax.swing.JPanel;
 import javax.swing.ImageIcon;
 import javax.imageio.ImageIO;
 
-/* GUI Representation of 3x3 Hexapawn board */
+/* GUI Representation of a Hexapawn board of any size */
 public class HexapawnBoard extends JPanel {
 
 	// Paths to images to be used for pawns
 	private static final String WHITE_PATH = "resources/white.png";
 	private static final String BLACK_PATH = "resources/black.png";
+	// Size in pixels of the pawns on a standard 3x3 board.
+	private static final int STANDARD_PAWN_SIZE = 160;
 
-	private JLabel[] squares = new JLabel[HexapawnConstants.BOARD_SIDE_LENGTH * 
-										  HexapawnConstants.BOARD_SIDE_LENGTH];
+	private JLabel[] squares;
 	private HexapawnGUI parent;
 	/* ImageIcons to uses as white and black pawns. Loaded once on class 
 		creations so we do not have to access a file every time we render one
@@ -38,18 +42,20 @@ public class HexapawnBoard extends JPanel {
 	private int to = -1;
 	private int from = -1;
 
-	public HexapawnBoard(HexapawnGUI parent) {
-		// Using GridLayout to create 3x3 board
-		super(new GridLayout(HexapawnConstants.BOARD_SIDE_LENGTH, 
-							 HexapawnConstants.BOARD_SIDE_LENGTH));
+	public HexapawnBoard(HexapawnGUI parent, HexapawnRules rules) {
+		// Using GridLayout to create the board, one row per row of squares
+		super(new GridLayout(rules.getHeight(), rules.getWidth()));
 		this.parent = parent;
+		this.squares = new JLabel[rules.getSquareCount()];
 
-		// Load pawn ImageIcons
-		white_pawn = loadScaledPawnImage(WHITE_PATH);
-		black_pawn = loadScaledPawnImage(BLACK_PATH);
+		// Load pawn ImageIcons, shrinking them to fit larger boards
+		int size = STANDARD_PAWN_SIZE * HexapawnConstants.BOARD_SIDE_LENGTH / 
+			Math.max(rules.getWidth(), rules.getHeight());
+		white_pawn = loadScaledPawnImage(WHITE_PATH, size);
+		black_pawn = loadScaledPawnImage(BLACK_PATH, size);
 
 		// Initialize the GUI board
-		for (int i =0 ; i < 9 ; i++) {
+		for (int i =0 ; i < squares.length ; i++) {
 			squares[i] = new JLabel();
 			squares[i].setBorder(BorderFactory.createLineBorder(Color.BLACK));
 			/* setOpaque(true) so we can render a background color to the 
@@ -57,14 +63,14 @@ public class HexapawnBoard extends JPanel {
 			squares[i].setOpaque(true);
 			/* Each square has its own listener identifed by its index on the 
 			   board.  Squares are numbered starting with 0 in the top left, 
-			   moving across, and ending with 8 in the bottom right */
+			   moving across, and ending in the bottom right */
 			squares[i].addMouseListener(new SquareListener(i));
 			add(squares[i]);
 		}
 	}
 
-	//Render the int[] representation of the board from the engine onto the GUI
-	protected void render(int[] board) {
+	//Render a view of the board from the engine onto the GUI
+	protected void render(BoardView board) {
 		/* Remove any previous GUI board state by rendering all squares on the
 		   board white and setting their icons null */
 		for (JLabel square : squares) {
@@ -74,7 +80,7 @@ public class HexapawnBoard extends JPanel {
 
 		// Render to each square (type = JLabel)
 		for (int i = 0 ; i < squares.length ; i++) {
-			switch(board[i]) {
+			switch(board.get(i)) {
 				case HexapawnConstants.EMPTY_SQUARE: 
 					squares[i].setBackground(Color.WHITE);
 					break;
@@ -85,14 +91,14 @@ public class HexapawnBoard extends JPanel {
 					squares[i].setIcon(black_pawn);
 					break;
 				default:
-					System.out.println("!!!! Fatar Error - unrecognized value on hexapawn board :: " + board[i] + " !!!!");
+					System.out.println("!!!! Fatar Error - unrecognized value on hexapawn board :: " + board.get(i) + " !!!!");
 					System.exit(0);
 			}
 		}
 	}
 
-	// Load an image from path into a scaled ImageIcon
-	private ImageIcon loadScaledPawnImage(String path) {
+	// Load an image from path into an ImageIcon scaled to size x size pixels
+	private ImageIcon loadScaledPawnImage(String path, int size) {
 		BufferedImage img = null;
 
 		try {
@@ -102,7 +108,7 @@ public class HexapawnBoard extends JPanel {
 			System.exit(0);
 		}
 
-		return new ImageIcon(img.getScaledInstance(160,160,Image.SCALE_SMOOTH));
+		return new ImageIcon(img.getScaledInstance(size,size,Image.SCALE_SMOOTH));
 	}
 
 	// Listener class for board squares.  Listens for click on the sqaure.
@@ -124,7 +130,7 @@ public class HexapawnBoard extends JPanel {
 				   now have everything we need to start a move phase. */
 				if (from != index) {
 					to = index;
-					parent.movePhase(from, to);
+					parent.movePhase(Move.of(from, to));
 					// Reset values so we can process next move.
 					from = -1;
 					to = -1;
@@ -3,121 +3,212 @@ package gui;
 import engine.*;
 
 import java.awt.BorderLayout;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 /* Displays a human vs AI, GUI version of the Hexapawn game */
 public class HexapawnGUI extends JFrame {
 
 	// Extended JPanel holding buttons and JLabels displaying results 
 	private HexapawnControls controls;
-	// Extended JPanel holding GUI 3x3 Hexapawn board 
+	// Extended JPanel holding GUI Hexapawn board 
 	private HexapawnBoard board;
-	// Logic and internal representations of Hexapawn game 
-	private HexapawnEngine engine;
+	/* Logic and internal representations of Hexapawn game, run on a thread
+	   of its own so the GUI stays responsive while the CPU thinks */
+	private HexapawnAsyncEngine engine;
+	// Latest state of the engine, only touched on the event dispatch thread
+	private HexapawnAsyncEngine.State state;
+	/* True while a move phase is in progress, clicks on the board are 
+	   ignored until it is done */
+	private boolean busy;
+	// Non-modal notice shown when a game ends
+	private JDialog notice;
+
+	// Runs engine results on the event dispatch thread.
+	private static final Executor EDT = SwingUtilities::invokeLater;
 
 	public HexapawnGUI() {
+		this(HexapawnRules.STANDARD);
+	}
+
+	/* Display a game played on a board of the size given by 'rules', with 
+	   the brain kept in the default file for that board size. */
+	public HexapawnGUI(HexapawnRules rules) {
+		this(rules, HexapawnBrainFile.defaultPath(rules));
+	}
+
+	/* Display a game played on a board of the size given by 'rules', with
+	   the brain kept in the file 'brainPath' between runs.  Every game is
+	   journalled as soon as it ends (see HexapawnJournal). */
+	public HexapawnGUI(HexapawnRules rules, String brainPath) {
+		this(rules, brainPath, null);
+	}
+
+	/* As HexapawnGUI(rules, brainPath), with the CPU's moves chosen by 
+	   'strategy' rather than the brain unless it is null. */
+	public HexapawnGUI(HexapawnRules rules, String brainPath, MoveStrategy strategy) {
 		super("Hexapawn");
 
 		setLayout(new BorderLayout());
 		setSize(500, 700);
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-		engine = new HexapawnEngine();
-		add((board = new HexapawnBoard(this)), BorderLayout.CENTER);
+		HexapawnEngine game = new HexapawnEngine(rules);
+		try {
+			game.setBrainFile(new HexapawnBrainFile(brainPath), 
+				new HexapawnJournal(HexapawnJournal.pathFor(brainPath), rules, 1));
+		} catch (IOException e) {
+			// Leave a damaged file alone rather than overwrite it.
+			JOptionPane.showMessageDialog(null, "Could not load the saved brain, " +
+				"learning will not be kept.\n" + e.getMessage(), "Hexapawn", 
+				JOptionPane.WARNING_MESSAGE);
+		}
+		game.setStrategy(strategy);
+		engine = new HexapawnAsyncEngine(game);
+		state = engine.state().join();
+
+		add((board = new HexapawnBoard(this, rules)), BorderLayout.CENTER);
 		add((controls = new HexapawnControls(this)), BorderLayout.SOUTH);
 
 
-		/* Get the int[] representation of current state of the board from
-		   the engine and render it to the GUI board */
-		board.render(engine.getCurrentState());
+		/* Get a view of the current state of the board from the engine and
+		   render it to the GUI board */
+		board.render(state.getBoard());
 		setVisible(true);
 	}
 
 	/* Reset the learning done by the AI, as well as the number of games 
 	   played, won by each party.  Render the default board and reset game
-	   counter back to the GUI */
+	   counter back to the GUI.  Ignored while a move phase is in progress. */
 	protected void resetSeries() {
-		engine.reset();
-		board.render(engine.getCurrentState());
-		controls.updateGameCounter();
+		if (busy) return;
+
+		busy = true;
+		engine.reset().thenAcceptAsync(reset -> {
+			update(reset);
+			busy = false;
+		}, EDT);
 	}
 
 	/* Player through one move phase.  A move phase is triggered by a move by the player (white). 
-		A move phase consists of distinct steps:
-			1. Store the current state of the board to keep track of moves and allow AI to learn from then in future.
-			2. Pass player move to engine. 
-				a. If the move is valid, engine.move() will return true to signify it has applied the move to the board. Go to 2.
-				b. If the move is not valid, engine.move() returns false to signify no changes were made to the board. Exit.
-			3. Get the current state of the board, this is the "post" board (the output vector for the given input vector stored above so to speak).
-			4. Add the pre and post white move boards as a pair to the engines "learning buffer".
-				aside. read about the Learning Buffer in HexapawnBrain.java
-			5. Render the white move to the board.
-			6. Check if game is over.
-				a. If game is over, we tell the engine to learn based on the outcome of the game. Exit.
+		A move phase consists of distinct steps, each run by the engine on its own thread with the 
+		results passed back to the event dispatch thread:
+			1. Pass player move to engine. 
+				a. If the move is valid, the engine applies it to the board and adds the pre and post 
+				   move boards as a pair to its "learning buffer". Go to 2.
+					aside. read about the Learning Buffer in HexapawnBrain.java
+				b. If the move is not valid, no changes were made to the board. Exit.
+			2. Render the white move to the board.
+			3. Check if game is over.
+				a. If game is over, the engine has learned based on the outcome of the game. Exit.
 				b. Else, continue.
-			7. Perform a CPU move following roughly the same logic.
+			4. Perform a CPU move following roughly the same logic.
+		Clicks on the board are ignored until the move phase is over, as are moves which do not 
+		start on one of the player's pawns.
 	*/
-	protected void movePhase(int from, int to) {
-		int[] pre = engine.getCurrentState();
-		if (engine.move(from, to)) {
-			int[] post = engine.getCurrentState();
-			engine.addToLearningBuffer( pre, post, engine.getPlayerColor() );
-			board.render( post );
-
-			if (engine.gameCompleted()) {
-				engine.learn( engine.getPlayerColor() );
-				resetGame();
+	protected void movePhase(Move move) {
+		if (busy || state.getBoard().get(move.getFrom()) != engine.getPlayerColor()) return;
+
+		busy = true;
+		engine.move(move).thenAcceptAsync(moved -> {
+			if (!moved.isValid()) {
+				busy = false;
 				return;				
+			}
+
+			update(moved);
+			if (moved.isGameOver()) {
+				resetGame();
 			} else { moveCPU(); }
-		}
+		}, EDT);
 	}
 
 	protected int getCurrentSeriesLength() {
-		return engine.getCurrentSeriesLength();
+		return state.getCurrentSeriesLength();
 	}
 
 	protected int getPlayerWinTotal() {
-		return engine.getPlayerWinTotal();
+		return state.getPlayerWinTotal();
 	}
 
 	protected int getCPUWinTotal() {
-		return engine.getCPUWinTotal();
+		return state.getCPUWinTotal();
 	}
 
 	/* Perform a move for the CPU (black).  Follows same logic as movePhase() 
-	   except it uses engine.makeMove to allow the engine to decide the best 
-	   move based on past matches in the series. */
+	   except it lets the engine decide the best move based on past matches 
+	   in the series. */
 	private void moveCPU() {
-		int[] pre = engine.getCurrentState();
-		engine.makeMove();
-		int[] post = engine.getCurrentState();
-		engine.addToLearningBuffer( pre, post, engine.getCPUColor() );
+		engine.moveCPU().thenAcceptAsync(moved -> {
+			update(moved);
 
-		board.render( post );
-
-		if (engine.gameCompleted()) {
-			engine.learn( engine.getCPUColor() );
-			resetGame();
-		}
+			if (moved.isGameOver()) {
+				resetGame();
+			} else {
+				busy = false;
+			}
+		}, EDT);
 	}
 
 	/* Reset the board GUI after a game has completed. This is not the same as
 	   resetting the series, in this case, all learning by the Hexapawn is 
 	   retained, and the program continues to track the win totals for the 
-	   player and the CPU */
+	   player and the CPU.  The winner is shown in a notice that does not 
+	   block, so the next game (and the CPU's first move, if it moves first)
+	   is prepared while it is showing, then shown once it is closed. */
 	private void resetGame() {
-		engine.refresh();
-		controls.updateGameCounter();
-		JOptionPane.showMessageDialog(null, 
-			"             Winner: " + engine.getWinner(), "Game Over!", 
-			JOptionPane.INFORMATION_MESSAGE		);
-
-		if ((engine.getCurrentSeriesLength() % 2) == 1) {
-			moveCPU();
-		} else {
-			board.render(engine.getCurrentState());
+		showNotice("             Winner: " + describe(state.getOutcome()));
+
+		engine.refresh().thenCompose(refreshed -> 
+			((refreshed.getCurrentSeriesLength() % 2) == 1) ? 
+				engine.moveCPU() : CompletableFuture.completedFuture(refreshed)
+		).thenAcceptAsync(next -> afterNotice(() -> {
+			update(next);
+			busy = false;
+		}), EDT);
+	}
+
+	// Who won a game that ended with 'outcome', as shown to the player.
+	private String describe(Outcome outcome) {
+		if (outcome == Outcome.DRAW) return "No winner!";
+		return (outcome.getWinner() == engine.getPlayerColor()) ? "You!" : "CPU";
+	}
+
+	// Show the game over notice with 'message'.
+	private void showNotice(String message) {
+		JOptionPane pane = new JOptionPane(message, JOptionPane.INFORMATION_MESSAGE);
+		notice = pane.createDialog(this, "Game Over!");
+		notice.setModal(false);
+		notice.setVisible(true);
+	}
+
+	// Run 'task' once the game over notice is closed, or now if it is.
+	private void afterNotice(Runnable task) {
+		if (notice == null || !notice.isVisible()) {
+			task.run();
+			return;
 		}
+
+		notice.addComponentListener(new ComponentAdapter() {
+			public void componentHidden(ComponentEvent e) {
+				notice.dispose();
+				task.run();
+			}
+		});
+	}
+
+	// Take on a new state of the engine, rendering the board and counters.
+	private void update(HexapawnAsyncEngine.State state) {
+		this.state = state;
+		board.render(state.getBoard());
+		controls.updateGameCounter();
 	}
 }
\ No newline at end of file
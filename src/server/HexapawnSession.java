@@ -0,0 +1,175 @@
+package server;
+
+import engine.HexapawnConcurrentBrain;
+import engine.HexapawnConstants;
+import engine.HexapawnRules;
+
+import java.util.Arrays;
+
+/* One player's series of games against the shared brain of a 
+   HexapawnSessionManager.  A session only holds its own board, the boards
+   of the game in progress and its win counts, so thousands of them cost 
+   little.  The player is white and the CPU black, and as in the GUI the CPU
+   moves first in every other game.
+
+   Sessions are used by the manager's threads one request at a time, callers
+   see them through the Reply of each request. */
+public class HexapawnSession {
+
+	private final long id;
+	private final HexapawnRules rules;
+	private long board;
+	private int toMove, result;
+	private boolean over;
+	// Board before each move of the game in progress, then the current board.
+	private long[] boards = new long[16];
+	private int plies, firstMover;
+	private int gamesPlayed, playerWins, cpuWins;
+
+	HexapawnSession(long id, HexapawnRules rules) {
+		this.id = id;
+		this.rules = rules;
+		startGame();
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	/* Move the player's pawn from 'from' to 'to' and, unless that ends the
+	   game, answer with a move by 'brain'.  Returns the finished game in
+	   'finished' if the game ended. */
+	synchronized Reply move(int from, int to, HexapawnConcurrentBrain brain, Finished finished) {
+		if (over || toMove != HexapawnConstants.WHITE_SQUARE || 
+				from < 0 || from >= rules.getSquareCount() || 
+				HexapawnRules.get(board, from) != HexapawnConstants.WHITE_SQUARE || 
+				!rules.isValidMove(board, from, to)) {
+			return new Reply(this, false);
+		}
+
+		play(HexapawnRules.move(board, from, to));
+		if (!checkOver(finished)) {
+			play(brain.getMove(board));
+			checkOver(finished);
+		}
+		return new Reply(this, true);
+	}
+
+	/* Start the next game of the series once the last is over, with a move
+	   by 'brain' if the CPU moves first.  Returns the finished game in 
+	   'finished' if that move ended it. */
+	synchronized Reply nextGame(HexapawnConcurrentBrain brain, Finished finished) {
+		if (!over) return new Reply(this, false);
+
+		gamesPlayed += 1;
+		if (result == HexapawnConstants.WHITE_SQUARE) playerWins += 1;
+		if (result == HexapawnConstants.BLACK_SQUARE) cpuWins += 1;
+		startGame();
+
+		if (gamesPlayed % 2 == 1) {
+			toMove = HexapawnConstants.BLACK_SQUARE;
+			play(brain.getMove(board));
+			checkOver(finished);
+		}
+		return new Reply(this, true);
+	}
+
+	synchronized Reply state() {
+		return new Reply(this, true);
+	}
+
+	private void startGame() {
+		board = rules.getDefaultBoard();
+		toMove = HexapawnConstants.WHITE_SQUARE;
+		over = false;
+		result = HexapawnConstants.EMPTY_SQUARE;
+		plies = 0;
+		boards[0] = board;
+	}
+
+	private void play(long next) {
+		if (plies == 0) firstMover = toMove;
+		if (plies + 1 == boards.length) boards = Arrays.copyOf(boards, boards.length * 2);
+
+		board = next;
+		boards[++plies] = next;
+		toMove = (toMove == HexapawnConstants.WHITE_SQUARE) ? 
+			HexapawnConstants.BLACK_SQUARE : HexapawnConstants.WHITE_SQUARE;
+	}
+
+	// Check if the game is over, copying it into 'finished' if it is.
+	private boolean checkOver(Finished finished) {
+		int outcome = rules.outcome(board, toMove);
+		if (outcome == HexapawnRules.ONGOING) return false;
+
+		over = true;
+		result = outcome;
+		finished.boards = Arrays.copyOf(boards, plies + 1);
+		finished.firstMover = firstMover;
+		finished.winner = outcome;
+		return true;
+	}
+
+	/* A game that has ended, for the brain to learn from.  'boards' holds the
+	   board before each move then the final board. */
+	static class Finished {
+		long[] boards;
+		int firstMover, winner;
+	}
+
+	/* The state of a session after a request, safe to read from any 
+	   thread. */
+	public static class Reply {
+
+		private final long id, board;
+		private final boolean valid, over;
+		private final int result, gamesPlayed, playerWins, cpuWins;
+
+		private Reply(HexapawnSession session, boolean valid) {
+			this.id = session.id;
+			this.board = session.board;
+			this.valid = valid;
+			this.over = session.over;
+			this.result = session.result;
+			this.gamesPlayed = session.gamesPlayed;
+			this.playerWins = session.playerWins;
+			this.cpuWins = session.cpuWins;
+		}
+
+		public long getSessionId() {
+			return id;
+		}
+
+		// False if the request was not valid, the session is unchanged.
+		public boolean isValid() {
+			return valid;
+		}
+
+		// The packed board, see HexapawnRules for the layout.
+		public long getBoard() {
+			return board;
+		}
+
+		public boolean isGameOver() {
+			return over;
+		}
+
+		// Winner of the game if it is over, EMPTY_SQUARE for a draw.
+		public int getResult() {
+			return result;
+		}
+
+		// Games completed in the series before the current one.
+		public int getCurrentSeriesLength() {
+			return gamesPlayed;
+		}
+
+		public int getPlayerWinTotal() {
+			return playerWins;
+		}
+
+		public int getCPUWinTotal() {
+			return cpuWins;
+		}
+	}
+}
\ No newline at end of file
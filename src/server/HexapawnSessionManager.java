@@ -0,0 +1,188 @@
+package server;
+
+import engine.HexapawnConcurrentBrain;
+import engine.HexapawnLearningBatch;
+import engine.HexapawnRules;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/* Hosts any number of concurrent HexapawnSessions playing against one shared
+   brain, through an in-process API where every request answers with a 
+   future.
+
+   Requests run on a fixed pool of threads.  Sessions and the learner share
+   one HexapawnConcurrentBrain, which any number of threads read while it 
+   learns without locking.  Finished games are handed to a single learner 
+   thread through a lock-free queue, and the learner teaches the brain all
+   the games queued at once as a HexapawnLearningBatch, so sessions never 
+   wait on learning and play from what was learned as soon as it is. */
+public class HexapawnSessionManager {
+
+	private final HexapawnRules rules;
+	// Brain the sessions play from and the learner teaches.
+	private final HexapawnConcurrentBrain brain;
+
+	private final ConcurrentHashMap<Long, HexapawnSession> sessions = 
+		new ConcurrentHashMap<Long, HexapawnSession>();
+	private final AtomicLong nextId = new AtomicLong();
+	private final ExecutorService pool;
+
+	private final ConcurrentLinkedQueue<HexapawnSession.Finished> finished = 
+		new ConcurrentLinkedQueue<HexapawnSession.Finished>();
+	private final AtomicInteger gamesLearned = new AtomicInteger();
+	private final Thread learner;
+	private volatile boolean running = true;
+
+	// Host sessions on a board of the size given by 'rules', with a new brain.
+	public HexapawnSessionManager(HexapawnRules rules, int threads) {
+		this(new HexapawnConcurrentBrain(rules), threads);
+	}
+
+	/* Host sessions against 'brain', which keeps learning from every game. 
+	   Other threads may play from it too, and take snapshots of it (see 
+	   HexapawnConcurrentBrain.snapshot) to save it. */
+	public HexapawnSessionManager(HexapawnConcurrentBrain brain, int threads) {
+		this.rules = brain.getRules();
+		this.brain = brain;
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "hexapawn-session-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		this.learner = new Thread("hexapawn-learner") {
+			public void run() {
+				learn();
+			}
+		};
+		learner.setDaemon(true);
+		learner.start();
+	}
+
+	public HexapawnRules getRules() {
+		return rules;
+	}
+
+	// The brain the sessions play against.
+	public HexapawnConcurrentBrain getBrain() {
+		return brain;
+	}
+
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	// Finished games learned from.
+	public int getGamesLearned() {
+		return gamesLearned.get();
+	}
+
+	// Open a new session, the player moves first in its first game.
+	public CompletableFuture<HexapawnSession.Reply> open() {
+		HexapawnSession session = new HexapawnSession(nextId.incrementAndGet(), rules);
+		sessions.put(session.getId(), session);
+		return CompletableFuture.completedFuture(session.state());
+	}
+
+	/* Move the player's pawn from 'from' to 'to' in session 'id', and reply
+	   with the CPU's move unless the game is over.  The reply is not valid if
+	   the move is not, or the game is over.  The future fails with an 
+	   IllegalArgumentException if there is no session 'id'. */
+	public CompletableFuture<HexapawnSession.Reply> move(long id, int from, int to) {
+		HexapawnSession session = sessions.get(id);
+		if (session == null) return unknown(id);
+		return CompletableFuture.supplyAsync(() -> {
+			HexapawnSession.Finished game = new HexapawnSession.Finished();
+			HexapawnSession.Reply reply = session.move(from, to, brain, game);
+			if (reply.isGameOver() && game.boards != null) submit(game);
+			return reply;
+		}, pool);
+	}
+
+	/* Start the next game in session 'id' once the last is over.  The reply
+	   is not valid if the game in progress is not over.  The future fails as
+	   for move if there is no session 'id'. */
+	public CompletableFuture<HexapawnSession.Reply> nextGame(long id) {
+		HexapawnSession session = sessions.get(id);
+		if (session == null) return unknown(id);
+		return CompletableFuture.supplyAsync(() -> {
+			HexapawnSession.Finished game = new HexapawnSession.Finished();
+			HexapawnSession.Reply reply = session.nextGame(brain, game);
+			if (reply.isGameOver() && game.boards != null) submit(game);
+			return reply;
+		}, pool);
+	}
+
+	// The state of session 'id', failing as for move if there is none.
+	public CompletableFuture<HexapawnSession.Reply> state(long id) {
+		HexapawnSession session = sessions.get(id);
+		if (session == null) return unknown(id);
+		return CompletableFuture.completedFuture(session.state());
+	}
+
+	// Close session 'id', a game in progress is not learned from.
+	public void close(long id) {
+		sessions.remove(id);
+	}
+
+	/* Stop taking requests, wait for those already made, and teach the brain
+	   every game finished so far. */
+	public void shutdown() {
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			running = false;
+			LockSupport.unpark(learner);
+			learner.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// A future already failed for a request to session 'id', which does not exist.
+	private static CompletableFuture<HexapawnSession.Reply> unknown(long id) {
+		CompletableFuture<HexapawnSession.Reply> reply = new CompletableFuture<HexapawnSession.Reply>();
+		reply.completeExceptionally(new IllegalArgumentException("No session " + id));
+		return reply;
+	}
+
+	private void submit(HexapawnSession.Finished game) {
+		finished.add(game);
+		LockSupport.unpark(learner);
+	}
+
+	// Body of the learner thread: learn from finished games as they come.
+	private void learn() {
+		HexapawnLearningBatch batch = new HexapawnLearningBatch(rules);
+
+		while (true) {
+			boolean stopping = !running;
+			HexapawnSession.Finished game;
+			while ((game = finished.poll()) != null) {
+				batch.addGame(game.boards, game.firstMover, game.winner);
+			}
+			if (batch.getGameCount() > 0) {
+				brain.learnBatch(batch);
+				gamesLearned.addAndGet(batch.getGameCount());
+				batch.clear();
+			}
+			if (stopping) return;
+
+			// Woken by submit() or shutdown().
+			LockSupport.park();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,104 @@
+package training;
+
+import engine.*;
+
+/* Plays games between the learning HexapawnBrain (black, the CPU) and an 
+   automated MoveStrategy (white) without the GUI.  Each game goes 
+   through the HexapawnEngine exactly as a game in the GUI would, so the 
+   brain learns from both sides of every game. */
+public class HexapawnSelfPlay {
+
+	private HexapawnEngine engine;
+	private MoveStrategy opponent;
+	// Results from the point of view of the CPU.
+	private int wins, draws, losses;
+
+	public HexapawnSelfPlay(HexapawnEngine engine, MoveStrategy opponent) {
+		this.engine = engine;
+		this.opponent = opponent;
+	}
+
+	public int getWins() {
+		return wins;
+	}
+
+	public int getDraws() {
+		return draws;
+	}
+
+	public int getLosses() {
+		return losses;
+	}
+
+	// Play 'games' games, continuing the engine's current series.
+	public void play(int games) {
+		for (int i = 0 ; i < games ; i++) {
+			playGame();
+		}
+	}
+
+	/* Play a single game to completion.  As in the GUI the CPU moves first in
+	   every other game of the series. */
+	private void playGame() {
+		boolean cpuTurn = (engine.getCurrentSeriesLength() % 2) == 1;
+
+		while (true) {
+			long pre = engine.getBoard();
+			int color;
+
+			if (cpuTurn) {
+				color = engine.getCPUColor();
+				engine.makeMove();
+			} else {
+				color = engine.getPlayerColor();
+				if (!engine.move(Move.decode(opponent.chooseMove(pre, color)))) {
+					throw new IllegalStateException("Opponent chose an invalid move");
+				}
+			}
+			engine.addToLearningBuffer(pre, engine.getBoard(), color);
+
+			if (engine.gameCompleted()) {
+				engine.learn(color);
+				break;
+			}
+			cpuTurn = !cpuTurn;
+		}
+
+		int winner = engine.getResult();
+		if (winner == engine.getCPUColor()) {
+			wins += 1;
+		} else if (winner == engine.getPlayerColor()) {
+			losses += 1;
+		} else {
+			draws += 1;
+		}
+
+		opponent.gameOver(winner);
+		engine.refresh();
+	}
+
+	/* Train 'brain' over 'games' games against 'opponent' and print the
+	   throughput and results.  The CPU's moves are chosen by 'strategy', or
+	   by the brain if it is null. */
+	public static void run(int games, HexapawnBrain brain, MoveStrategy opponent, 
+			MoveStrategy strategy) {
+		HexapawnEngine engine = new HexapawnEngine(brain);
+		engine.setStrategy(strategy);
+		HexapawnSelfPlay selfPlay = new HexapawnSelfPlay(engine, opponent);
+
+		long start = System.nanoTime();
+		selfPlay.play(games);
+		report(games, System.nanoTime() - start, 
+			selfPlay.getWins(), selfPlay.getDraws(), selfPlay.getLosses());
+	}
+
+	// Print the throughput and results of a training run.
+	static void report(int games, long nanos, int wins, int draws, int losses) {
+		double seconds = nanos / 1e9;
+
+		System.out.println(String.format("Played %d games in %.3fs (%.0f games/sec)", 
+			games, seconds, games / seconds));
+		System.out.println(String.format("CPU wins/draws/losses: %.2f%% / %.2f%% / %.2f%%", 
+			100.0 * wins / games, 100.0 * draws / games, 100.0 * losses / games));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,378 @@
+package training;
+
+import engine.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* Round-robin tournament between automated players, for measuring whether
+   one strategy or brain beats another without playing it in the GUI.
+
+   Players are named as for HexapawnEngine.createStrategy ("brain" is a
+   learning brain that starts empty), or "brain:FILE" for a brain saved by
+   HexapawnBrainFile that keeps learning from there.  Every pair of players
+   plays the same number of games, taking turns at white (which moves
+   first).
+
+   The games of each pairing are split into blocks of 'blockLength' games,
+   and blocks run in parallel on a pool of threads.  Every block starts
+   with fresh players seeded from the tournament seed, so learning players
+   learn over one block.  Between brain, random and perfect players a given
+   seed and block length give the same results however many threads run 
+   them.  The minimax and mcts players search within a time budget, so 
+   their moves can also depend on the speed of the machine and how busy 
+   its cores are. */
+public class HexapawnTournament {
+
+	// Default number of games played by one set of players.
+	public static final int DEFAULT_BLOCK_LENGTH = 10000;
+
+	// Normal quantile for the 95% confidence intervals reported.
+	private static final double Z = 1.96;
+
+	private HexapawnRules rules;
+	private String[] names;
+	// Brain each "brain:FILE" player starts from, null for the other players.
+	private HexapawnBrain[] brains;
+	private long seed;
+	private int blockLength;
+
+	private Pairing[] pairings;
+	private long nanos;
+
+	/* Create a tournament between the players named in 'names' on boards of
+	   the size given by 'rules'.  Throws IllegalArgumentException if a name
+	   is not recognized or the player can not play on the board, and
+	   IOException if a brain file can not be loaded. */
+	public HexapawnTournament(HexapawnRules rules, String[] names, long seed, int blockLength)
+			throws IOException {
+		if (names.length < 2) {
+			throw new IllegalArgumentException("A tournament needs at least two players");
+		}
+		this.rules = rules;
+		this.names = names;
+		this.brains = new HexapawnBrain[names.length];
+		this.seed = seed;
+		this.blockLength = blockLength;
+
+		for (int i = 0 ; i < names.length ; i++) {
+			if (names[i].startsWith("brain:")) {
+				String path = names[i].substring("brain:".length());
+				brains[i] = new HexapawnBrain(rules);
+				if (!HexapawnBrainFile.load(path, brains[i])) {
+					throw new IOException("No brain file " + path);
+				}
+			} else if (createPlayer(i, seed) == null) {
+				throw new IllegalArgumentException("Unknown player " + names[i]);
+			}
+		}
+	}
+
+	/* Play 'games' games between every pair of players on 'threads' threads,
+	   replacing the results of any earlier run. */
+	public void play(int games, int threads) {
+		ArrayList<Pairing> played = new ArrayList<Pairing>();
+		for (int i = 0 ; i < names.length ; i++) {
+			for (int j = i + 1 ; j < names.length ; j++) {
+				played.add(new Pairing(names[i], names[j]));
+			}
+		}
+		pairings = played.toArray(new Pairing[played.size()]);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Block>> blocks = new ArrayList<Future<Block>>();
+		long start = System.nanoTime();
+
+		try {
+			int pairing = 0;
+			for (int i = 0 ; i < names.length ; i++) {
+				for (int j = i + 1 ; j < names.length ; j++, pairing++) {
+					for (int block = 0 ; block * (long)blockLength < games ; block++) {
+						int length = (int)Math.min(blockLength, games - block * (long)blockLength);
+						blocks.add(pool.submit(new Block(pairing, i, j, block, length)));
+					}
+				}
+			}
+
+			for (Future<Block> future : blocks) {
+				Block block = future.get();
+				pairings[block.pairing].add(block);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted during the tournament", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Tournament match failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		nanos = System.nanoTime() - start;
+	}
+
+	// Results of the last run, one per pair of players.
+	public Pairing[] getPairings() {
+		return pairings.clone();
+	}
+
+	public long getNanos() {
+		return nanos;
+	}
+
+	public int getGames() {
+		int total = 0;
+		for (Pairing pairing : pairings) total += pairing.getGames();
+		return total;
+	}
+
+	// Print the results of the last run.
+	public void print() {
+		double seconds = nanos / 1e9;
+		System.out.println(String.format(Locale.ROOT, "Played %d games in %.3fs (%.0f games/sec)",
+			getGames(), seconds, getGames() / seconds));
+
+		for (Pairing p : pairings) {
+			System.out.println(String.format(Locale.ROOT,
+				"%s vs %s: %d games, wins %.2f%% [%.2f, %.2f], draws %.2f%%, " +
+				"losses %.2f%% [%.2f, %.2f], score %.3f [%.3f, %.3f], %.0f games/sec per thread",
+				p.player, p.opponent, p.getGames(),
+				100 * p.getWinRate(), 100 * p.wilson(p.wins, -1), 100 * p.wilson(p.wins, 1),
+				100.0 * p.draws / p.getGames(),
+				100 * p.getLossRate(), 100 * p.wilson(p.losses, -1), 100 * p.wilson(p.losses, 1),
+				p.getScore(), p.getScore() - p.scoreMargin(), p.getScore() + p.scoreMargin(),
+				p.getGamesPerSecond()));
+		}
+	}
+
+	/* Write the results of the last run to 'path', as JSON if it ends in
+	   ".json" and as CSV with one row per pairing otherwise. */
+	public void writeReport(String path) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(path));
+		try {
+			if (path.endsWith(".json")) {
+				writeJson(out);
+			} else {
+				writeCsv(out);
+			}
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) throw new IOException("Could not write " + path);
+	}
+
+	private void writeCsv(PrintWriter out) {
+		out.println("player,opponent,games,wins,draws,losses,win_rate,win_low,win_high," +
+			"loss_rate,loss_low,loss_high,score,score_low,score_high,games_per_sec");
+		for (Pairing p : pairings) {
+			out.println(String.format(Locale.ROOT,
+				"%s,%s,%d,%d,%d,%d,%.5f,%.5f,%.5f,%.5f,%.5f,%.5f,%.5f,%.5f,%.5f,%.1f",
+				p.player, p.opponent, p.getGames(), p.wins, p.draws, p.losses,
+				p.getWinRate(), p.wilson(p.wins, -1), p.wilson(p.wins, 1),
+				p.getLossRate(), p.wilson(p.losses, -1), p.wilson(p.losses, 1),
+				p.getScore(), p.getScore() - p.scoreMargin(), p.getScore() + p.scoreMargin(),
+				p.getGamesPerSecond()));
+		}
+	}
+
+	private void writeJson(PrintWriter out) {
+		out.println(String.format(Locale.ROOT,
+			"{\"board\": \"%s\", \"seed\": %d, \"games\": %d, \"seconds\": %.3f, " +
+			"\"games_per_sec\": %.1f, \"pairings\": [",
+			rules, seed, getGames(), nanos / 1e9, getGames() / (nanos / 1e9)));
+		for (int i = 0 ; i < pairings.length ; i++) {
+			Pairing p = pairings[i];
+			out.println(String.format(Locale.ROOT,
+				"  {\"player\": \"%s\", \"opponent\": \"%s\", \"games\": %d, " +
+				"\"wins\": %d, \"draws\": %d, \"losses\": %d, " +
+				"\"win_rate\": [%.5f, %.5f, %.5f], \"loss_rate\": [%.5f, %.5f, %.5f], " +
+				"\"score\": [%.5f, %.5f, %.5f], \"games_per_sec\": %.1f}%s",
+				json(p.player), json(p.opponent), p.getGames(), p.wins, p.draws, p.losses,
+				p.getWinRate(), p.wilson(p.wins, -1), p.wilson(p.wins, 1),
+				p.getLossRate(), p.wilson(p.losses, -1), p.wilson(p.losses, 1),
+				p.getScore(), p.getScore() - p.scoreMargin(), p.getScore() + p.scoreMargin(),
+				p.getGamesPerSecond(), (i + 1 < pairings.length) ? "," : ""));
+		}
+		out.println("]}");
+	}
+
+	private static String json(String text) {
+		return text.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	// Player 'player' as a fresh strategy seeded with 'seed'.
+	private MoveStrategy createPlayer(int player, long seed) {
+		if (brains[player] != null) {
+			return new HexapawnBrainStrategy(brains[player].copy(seed), true);
+		}
+		return HexapawnEngine.createStrategy(names[player], rules, seed);
+	}
+
+	/* Play one game with 'white' moving first, returning the color of the
+	   winner or EMPTY_SQUARE for a draw. */
+	private int playGame(MoveStrategy white, MoveStrategy black) {
+		long board = rules.getDefaultBoard();
+		int toMove = HexapawnConstants.WHITE_SQUARE;
+
+		while (true) {
+			int result = rules.outcome(board, toMove);
+			if (result != HexapawnRules.ONGOING) return result;
+
+			if (toMove == HexapawnConstants.WHITE_SQUARE) {
+				board = HexapawnRules.move(board, white.chooseMove(board, toMove));
+				toMove = HexapawnConstants.BLACK_SQUARE;
+			} else {
+				board = HexapawnRules.move(board, black.chooseMove(board, toMove));
+				toMove = HexapawnConstants.WHITE_SQUARE;
+			}
+		}
+	}
+
+	/* Derive the seed used by 'player' in block 'block' of pairing 'pairing'. */
+	private long mix(int pairing, int block, int player) {
+		long z = seed + 0x9E3779B97F4A7C15L * (((long)pairing << 40) + ((long)block << 8) + player + 1);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/* Play a tournament of 'games' games per pairing between 'names' on
+	   'threads' threads, print the results and write them to 'report'
+	   unless it is null. */
+	public static void run(HexapawnRules rules, String[] names, int games, int threads,
+			long seed, String report) throws IOException {
+		HexapawnTournament tournament = new HexapawnTournament(rules, names, seed,
+			DEFAULT_BLOCK_LENGTH);
+		tournament.play(games, threads);
+		tournament.print();
+		if (report != null) tournament.writeReport(report);
+	}
+
+	// Results of every game between two players, from the first one's side.
+	public static class Pairing {
+
+		private final String player, opponent;
+		private int wins, draws, losses;
+		// Time spent playing, summed over every thread.
+		private long nanos;
+
+		private Pairing(String player, String opponent) {
+			this.player = player;
+			this.opponent = opponent;
+		}
+
+		private synchronized void add(Block block) {
+			wins += block.wins;
+			draws += block.draws;
+			losses += block.losses;
+			nanos += block.nanos;
+		}
+
+		public String getPlayer() {
+			return player;
+		}
+
+		public String getOpponent() {
+			return opponent;
+		}
+
+		public int getWins() {
+			return wins;
+		}
+
+		public int getDraws() {
+			return draws;
+		}
+
+		public int getLosses() {
+			return losses;
+		}
+
+		public int getGames() {
+			return wins + draws + losses;
+		}
+
+		public double getWinRate() {
+			return (double)wins / getGames();
+		}
+
+		public double getLossRate() {
+			return (double)losses / getGames();
+		}
+
+		// Points per game for the player, a draw counting half a win.
+		public double getScore() {
+			return (wins + 0.5 * draws) / getGames();
+		}
+
+		// Games played per second of a single thread's time.
+		public double getGamesPerSecond() {
+			return getGames() / (nanos / 1e9);
+		}
+
+		/* Lower (side -1) or upper (side 1) end of the 95% Wilson score
+		   interval for a rate of 'count' in the games played. */
+		public double wilson(int count, int side) {
+			double n = getGames(), p = count / n, z2 = Z * Z;
+			double centre = p + z2 / (2 * n);
+			double margin = Z * Math.sqrt(p * (1 - p) / n + z2 / (4 * n * n));
+			return (centre + side * margin) / (1 + z2 / n);
+		}
+
+		// Half the width of the 95% confidence interval of the score.
+		public double scoreMargin() {
+			double n = getGames(), score = getScore();
+			double variance = (wins * (1 - score) * (1 - score) +
+				draws * (0.5 - score) * (0.5 - score) + losses * score * score) / n;
+			return Z * Math.sqrt(variance / n);
+		}
+	}
+
+	/* Games between players 'first' and 'second' with fresh players, the
+	   first taking white in even games.  Results are from the first
+	   player's side. */
+	private class Block implements Callable<Block> {
+
+		private final int pairing, first, second, block, length;
+		private int wins, draws, losses;
+		private long nanos;
+
+		public Block(int pairing, int first, int second, int block, int length) {
+			this.pairing = pairing;
+			this.first = first;
+			this.second = second;
+			this.block = block;
+			this.length = length;
+		}
+
+		public Block call() {
+			long start = System.nanoTime();
+			MoveStrategy one = createPlayer(first, mix(pairing, block, 0));
+			MoveStrategy two = createPlayer(second, mix(pairing, block, 1));
+
+			for (int game = 0 ; game < length ; game++) {
+				boolean oneWhite = (game % 2) == 0;
+				int winner = oneWhite ? playGame(one, two) : playGame(two, one);
+				one.gameOver(winner);
+				two.gameOver(winner);
+
+				int oneColor = oneWhite ? HexapawnConstants.WHITE_SQUARE : HexapawnConstants.BLACK_SQUARE;
+				if (winner == HexapawnConstants.EMPTY_SQUARE) {
+					draws += 1;
+				} else if (winner == oneColor) {
+					wins += 1;
+				} else {
+					losses += 1;
+				}
+			}
+			nanos = System.nanoTime() - start;
+			return this;
+		}
+	}
+}
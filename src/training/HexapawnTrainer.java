@@ -0,0 +1,168 @@
+package training;
+
+import engine.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* Trains one HexapawnBrain with self-play spread over several threads.
+   
+   Training runs in rounds.  At the start of a round every worker gets its 
+   own copy (shard) of the global brain and plays its share of the round's 
+   games against its own opponent, with nothing shared between threads.  Once
+   every worker is done, what each shard learned is merged back into the 
+   global brain in worker order.  Every random choice is seeded from the 
+   trainer's seed, so a given seed, thread count and round length always 
+   produce the same brain. */
+public class HexapawnTrainer {
+
+	// Default number of games each worker plays between merges.
+	public static final int DEFAULT_ROUND_LENGTH = 5000;
+
+	private HexapawnBrain global;
+	private Worker[] workers;
+	private int roundLength, rounds;
+	private long seed;
+
+	public HexapawnTrainer(HexapawnRules rules, String opponent, int threads, long seed,
+			int roundLength) {
+		this(new HexapawnBrain(rules, seed), opponent, null, threads, seed, roundLength);
+	}
+
+	/* Create a trainer that keeps training 'brain' as its global brain, with
+	   the CPU's moves chosen by the strategy named 'strategy' (see 
+	   HexapawnEngine.createStrategy), or by the brain if it is null. */
+	public HexapawnTrainer(HexapawnBrain brain, String opponent, String strategy, int threads,
+			long seed, int roundLength) {
+		HexapawnRules rules = brain.getRules();
+		this.global = brain;
+		this.workers = new Worker[threads];
+		this.roundLength = roundLength;
+		this.seed = seed;
+
+		for (int i = 0 ; i < threads ; i++) {
+			workers[i] = new Worker(
+				HexapawnEngine.createStrategy(opponent, rules, mix(seed, -1, i)),
+				(strategy == null) ? null : 
+					HexapawnEngine.createStrategy(strategy, rules, mix(seed, -2, i)));
+		}
+	}
+
+	public HexapawnBrain getBrain() {
+		return global;
+	}
+
+	/* Play 'games' more games across all workers, merging into the global 
+	   brain after each round. */
+	public void train(int games) {
+		ExecutorService pool = Executors.newFixedThreadPool(workers.length);
+
+		try {
+			while (games > 0) {
+				int round = (int)Math.min(games, (long)roundLength * workers.length);
+				playRound(pool, round);
+				games -= round;
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// Play one round of 'games' games split as evenly as possible between workers.
+	private void playRound(ExecutorService pool, int games) {
+		HexapawnBrain base = global.copy(seed);
+		ArrayList<Future<HexapawnBrain>> shards = new ArrayList<Future<HexapawnBrain>>();
+
+		for (int i = 0 ; i < workers.length ; i++) {
+			int share = games / workers.length + ((i < games % workers.length) ? 1 : 0);
+			shards.add(pool.submit(workers[i].round(base.copy(mix(seed, rounds, i)), share)));
+		}
+
+		try {
+			for (Future<HexapawnBrain> shard : shards) {
+				global.merge(shard.get(), base);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while training", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Training worker failed", e.getCause());
+		}
+		rounds += 1;
+	}
+
+	public int getWins() {
+		int total = 0;
+		for (Worker worker : workers) total += worker.wins;
+		return total;
+	}
+
+	public int getDraws() {
+		int total = 0;
+		for (Worker worker : workers) total += worker.draws;
+		return total;
+	}
+
+	public int getLosses() {
+		int total = 0;
+		for (Worker worker : workers) total += worker.losses;
+		return total;
+	}
+
+	/* Derive the seed used by worker 'worker' in round 'round' (round -1 
+	   seeds the worker's opponent, and round -2 the CPU's strategy). */
+	private static long mix(long seed, int round, int worker) {
+		long z = seed + 0x9E3779B97F4A7C15L * (((long)round << 32) + worker + 1);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/* Train 'brain' over 'games' games against 'opponent' on 'threads' 
+	   threads, with the CPU playing 'strategy' (null for the brain), and 
+	   print the throughput and results. */
+	public static void run(int games, HexapawnBrain brain, String opponent, String strategy,
+			int threads, long seed) {
+		HexapawnTrainer trainer = new HexapawnTrainer(brain, opponent, strategy, threads, seed, 
+			DEFAULT_ROUND_LENGTH);
+
+		long start = System.nanoTime();
+		trainer.train(games);
+		HexapawnSelfPlay.report(games, System.nanoTime() - start, 
+			trainer.getWins(), trainer.getDraws(), trainer.getLosses());
+	}
+
+	/* One self-play thread.  Keeps its opponent, strategy and results across rounds, 
+	   and only touches the brain shard it is handed for a round. */
+	private static class Worker {
+
+		private MoveStrategy opponent, strategy;
+		private int wins, draws, losses;
+
+		public Worker(MoveStrategy opponent, MoveStrategy strategy) {
+			this.opponent = opponent;
+			this.strategy = strategy;
+		}
+
+		// Task playing 'games' games with 'shard', returning the trained shard.
+		public Callable<HexapawnBrain> round(final HexapawnBrain shard, final int games) {
+			return new Callable<HexapawnBrain>() {
+				public HexapawnBrain call() {
+					HexapawnEngine engine = new HexapawnEngine(shard);
+					engine.setStrategy(strategy);
+					HexapawnSelfPlay selfPlay = new HexapawnSelfPlay(engine, opponent);
+					selfPlay.play(games);
+
+					wins += selfPlay.getWins();
+					draws += selfPlay.getDraws();
+					losses += selfPlay.getLosses();
+					return shard;
+				}
+			};
+		}
+	}
+}
\ No newline at end of file